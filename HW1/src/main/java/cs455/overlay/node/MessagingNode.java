@@ -2,6 +2,7 @@ package cs455.overlay.node;
 
 import cs455.overlay.routing.RoutingTable;
 import cs455.overlay.transport.TCPConnection;
+import cs455.overlay.transport.SelectorTransport;
 import cs455.overlay.transport.TCPConnectionsCache;
 import cs455.overlay.transport.TCPServerThread;
 import cs455.overlay.util.CommandParser;
@@ -10,7 +11,9 @@ import cs455.overlay.wireformats.*;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Class: MessagingNode
@@ -26,18 +29,23 @@ public class MessagingNode extends Node {
     private RoutingTable routingTable;
     private TCPConnectionsCache cache;
     private TCPServerThread tcpServer;
+    private SelectorTransport transport;
     private int[] nodes;
     private TCPConnection registryConnection;
     private OverlayNodeReportsTrafficSummary ONRTS;
     private OverlayNodeReportsTrafficSummary prevONRTS;
     private Boolean useCurrent = true;
+    private AtomicInteger packetsDropped = new AtomicInteger();
+    private static final ThreadLocal<OverlayNodeSendsDataView> RELAY_VIEW =
+            ThreadLocal.withInitial(OverlayNodeSendsDataView::new);
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 2){
-            System.out.println("USAGE: java cs455.overlay.node.MessagingNode [Registry Host] [Registry Port]");
+        if (args.length != 2 && args.length != 3){
+            System.out.println("USAGE: java cs455.overlay.node.MessagingNode [Registry Host] [Registry Port] [Transport: threads|nio (optional)]");
             System.exit(1);
         }
-        MessagingNode node = new MessagingNode(args[0], Integer.parseInt(args[1]));
+        SelectorTransport transport = SelectorTransport.forName(args.length == 3 ? args[2] : "threads");
+        MessagingNode node = new MessagingNode(args[0], Integer.parseInt(args[1]), transport);
     }
 
     /**
@@ -47,6 +55,16 @@ public class MessagingNode extends Node {
      *  and a server thread to accept connection.
      * */
     public MessagingNode(String ip, int port) throws Exception {
+        this(ip, port, null);
+    }
+
+    /**
+     * @Method: Constructor
+     *  As above, but all connections are run by `transport`, or each
+     *  gets its own threads if it is null.
+     * */
+    public MessagingNode(String ip, int port, SelectorTransport transport) throws Exception {
+        this.transport = transport;
         this.cache = new TCPConnectionsCache();
         new EventFactory(this);
         this.ONRTS = new OverlayNodeReportsTrafficSummary();
@@ -58,7 +76,7 @@ public class MessagingNode extends Node {
         new Thread(() -> new CommandParser().messengerParser(this), "Command Parser").start();
         try {
             // Initialize server to get port to send to registry
-            Thread server = new Thread(this.tcpServer = new TCPServerThread(0), "Messenger");
+            Thread server = new Thread(this.tcpServer = new TCPServerThread(0, this.transport), "Messenger");
             server.start();
 
             // Register this node with the registry
@@ -77,15 +95,14 @@ public class MessagingNode extends Node {
      * */
     private void register(String RegistryIP, int RegistryPort) throws Exception {
         try {
-            Socket registerSocket = new Socket(RegistryIP, RegistryPort);
-            this.registryConnection = new TCPConnection(registerSocket);
+            this.registryConnection = connect(RegistryIP, RegistryPort);
             this.registryConnection.exitOnClose();
             this.registryConnection.init();
             OverlayNodeSendsRegistration ONSR = new OverlayNodeSendsRegistration(
                     InetAddress.getLocalHost().getAddress(),
                     this.tcpServer.getPort());
 
-            this.registryConnection.sendData(ONSR.pack());
+            this.registryConnection.sendEvent(ONSR);
 
         } catch (IOException ioe){
             System.out.println("[" + Thread.currentThread().getName() + "] Error registering node: " + ioe.getMessage());
@@ -93,6 +110,18 @@ public class MessagingNode extends Node {
         }
     }
 
+    /**
+     * @Method: connect
+     *  Opens a connection to host:port on this node's transport. The
+     *  caller still has to `init` it.
+     * */
+    private TCPConnection connect(String host, int port) throws IOException {
+        if (this.transport != null) {
+            return this.transport.connect(host, port);
+        }
+        return new TCPConnection(new Socket(host, port));
+    }
+
     /**
      * @Method: onEvent - extended from Node
      *  Handles all event types for MessagingNodes
@@ -113,8 +142,9 @@ public class MessagingNode extends Node {
                 this.nodes = RSNM.getNodes();
                 try {
                     setupOverlayConnections();
+                    this.cache.buildNextHops(this.routingTable, this.nodes);
                     NodeReportsOverlaySetupStatus NROSS = new NodeReportsOverlaySetupStatus(this.id, "Overlay connections have been initialized.");
-                    conn.sendData(NROSS.pack());
+                    conn.sendEvent(NROSS);
                 } catch (Exception err){
                     System.out.println("Error creating overlay on node: " + err.getMessage());
                 }
@@ -141,11 +171,14 @@ public class MessagingNode extends Node {
                         this.ONRTS.addPacketsReceived(1);
                     }
                 } else {
+                    TCPConnection next = nextHop(ONSD.getDestinationId());
+                    if (next == null)
+                        break;
                     synchronized (this.ONRTS){
                         this.ONRTS.addPacketsRelayed(1);
                     }
                     ONSD.addTrace(this.id);
-                    this.cache.getNearestId(ONSD.getDestinationId()).sendData(ONSD.pack());
+                    next.sendEvent(ONSD);
                 }
                 break;
 
@@ -170,6 +203,8 @@ public class MessagingNode extends Node {
                         synchronized (this.useCurrent) {
                             if (this.useCurrent) {
                                 this.prevONRTS = new OverlayNodeReportsTrafficSummary(this.ONRTS);
+                                // Packed now, not sent as an Event: prevONRTS
+                                // keeps changing after it is sent
                                 this.registryConnection.sendData(prevONRTS.pack());
                                 this.ONRTS.reset();
                                 this.useCurrent = false;
@@ -200,6 +235,53 @@ public class MessagingNode extends Node {
         }
     }
 
+    /**
+     * @Method: relay - extended from Node
+     *  Cut-through path for data packets not addressed to this node: reads
+     *  the destination in place, appends this node's id to the trace and
+     *  forwards the same array without decoding or re-encoding it.
+     * */
+    @Override
+    public boolean relay(TCPConnection conn, byte[] data) throws Exception {
+        OverlayNodeSendsDataView packet = RELAY_VIEW.get().wrap(data);
+        int destinationId = packet.getDestinationId();
+        if (destinationId == this.id)
+            return false;
+
+        TCPConnection next = nextHop(destinationId);
+        if (next == null)
+            return true;
+        int length = packet.getLength();
+        if (data.length < length + 4) {
+            data = Arrays.copyOf(data, length + 4);
+            packet.wrap(data);
+        }
+        packet.appendTrace(this.id);
+        synchronized (this.ONRTS){
+            this.ONRTS.addPacketsRelayed(1);
+        }
+        next.sendData(data, length + 4);
+        return true;
+    }
+
+    /**
+     * @Method: nextHop
+     *  The connection to forward a packet for `destinationId` on, or null
+     *  if there is none, in which case the packet is counted as dropped.
+     *  The first drop and every thousandth after it are logged.
+     * */
+    private TCPConnection nextHop(int destinationId) {
+        TCPConnection next = this.cache.getNextHop(destinationId);
+        if (next == null) {
+            int dropped = this.packetsDropped.incrementAndGet();
+            if (dropped % 1000 == 1) {
+                System.out.println("[" + Thread.currentThread().getName() + "] No route to node " + destinationId
+                        + "; " + dropped + " packet(s) dropped");
+            }
+        }
+        return next;
+    }
+
     /**
      * @Method: setupOverlayConnections
      *  Configures/initializes TCPConnections to each route
@@ -209,7 +291,7 @@ public class MessagingNode extends Node {
 
         for (int i = 0 ; i < routingTable.getTableSize() ; i++){
             try {
-                TCPConnection conn = new TCPConnection(new Socket(routingTable.getRoute(i).ipToString(), routingTable.getRoute(i).getPort()));
+                TCPConnection conn = connect(routingTable.getRoute(i).ipToString(), routingTable.getRoute(i).getPort());
                 conn.init();
                 cache.addConnection(routingTable.getRoute(i).getGuid(), conn);
             } catch (Exception e){
@@ -233,11 +315,14 @@ public class MessagingNode extends Node {
         int nodeId;
         OverlayNodeSendsData ONSD;
         for (int i = 0 ; i < numDataPackets ; i++){
-            while ((nodeId = randomId.nextInt(this.nodes.length)) == this.id);
+            while ((nodeId = this.nodes[randomId.nextInt(this.nodes.length)]) == this.id);
             int payload = randomInt.nextInt() - 2147483647 - 1;
             ONSD = new OverlayNodeSendsData(nodeId, this.id, payload, new int[0]);
             try {
-                this.cache.getNearestId(nodeId).sendData(ONSD.pack());
+                TCPConnection next = nextHop(nodeId);
+                if (next == null)
+                    continue;
+                next.sendEvent(ONSD);
                 synchronized (this.ONRTS){
                     this.ONRTS.addSumSent(payload);
                     this.ONRTS.addPacketsSent(1);
@@ -248,10 +333,10 @@ public class MessagingNode extends Node {
             }
         }
         try {
-            this.registryConnection.sendData(new OverlayNodeReportsTaskFinished(
+            this.registryConnection.sendEvent(new OverlayNodeReportsTaskFinished(
                     this.tcpServer.getHostBytes(),
                     this.tcpServer.getPort(),
-                    this.id).pack());
+                    this.id));
         } catch (Exception e){
             System.out.println("[" + Thread.currentThread().getName() + "] Error sending task finished: " + e.getMessage());
         }
@@ -277,6 +362,11 @@ public class MessagingNode extends Node {
         System.out.print(String.format("| %-15s ", ONRTS.getSumSent()));
         System.out.println(String.format("| %-15s |", ONRTS.getSumReceived()));
         System.out.println();
+        System.out.println(String.format("Frames per flush: %.2f", TCPConnection.getFramesPerFlush()));
+        if (this.packetsDropped.get() > 0) {
+            System.out.println("Packets dropped for lack of a route: " + this.packetsDropped.get());
+        }
+        System.out.println();
     }
 
     /**
@@ -286,7 +376,7 @@ public class MessagingNode extends Node {
      * */
     public void exitOverlay(){
         try {
-            this.registryConnection.sendData(new OverlayNodeSendsDeregistration(this.tcpServer.getHostBytes(), this.tcpServer.getPort(), this.id).pack());
+            this.registryConnection.sendEvent(new OverlayNodeSendsDeregistration(this.tcpServer.getHostBytes(), this.tcpServer.getPort(), this.id));
         } catch (Exception e){
 
         }
@@ -7,4 +7,14 @@ public abstract class Node {
 
     public abstract void onEvent(TCPConnection conn, Event e) throws Exception;
 
+    /**
+     * @Method: relay
+     *  Offered every data packet before it is decoded. Returns true if the
+     *  packet was forwarded as-is and needs no further handling. `data`
+     *  has TCPConnection.RECEIVE_HEADROOM spare bytes past the packet.
+     * */
+    public boolean relay(TCPConnection conn, byte[] data) throws Exception {
+        return false;
+    }
+
 }
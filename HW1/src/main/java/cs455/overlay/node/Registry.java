@@ -3,6 +3,7 @@ package cs455.overlay.node;
 import cs455.overlay.routing.RegisterItem;
 import cs455.overlay.routing.Route;
 import cs455.overlay.routing.RoutingTable;
+import cs455.overlay.transport.SelectorTransport;
 import cs455.overlay.transport.TCPConnection;
 import cs455.overlay.transport.TCPServerThread;
 import cs455.overlay.transport.TCPConnectionsCache;
@@ -17,22 +18,29 @@ public class Registry extends Node{
     private RoutingTable[] manifests;
     private TCPConnectionsCache cache;
     private TCPServerThread tcpServer;
+    private SelectorTransport transport;
     private int port;
     private Integer count = 0;
     private Integer completeCount = 0;
     private OverlayNodeReportsTrafficSummary overlaySummary;
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1){
-            System.out.println("USAGE: java cs455.overlay.node.Registry [Port Number]");
+        if (args.length != 1 && args.length != 2){
+            System.out.println("USAGE: java cs455.overlay.node.Registry [Port Number] [Transport: threads|nio (optional)]");
             System.exit(1);
         }
-        Registry registry = new Registry(Integer.parseInt(args[0]));
+        Registry registry = new Registry(Integer.parseInt(args[0]),
+                SelectorTransport.forName(args.length == 2 ? args[1] : "threads"));
         registry.init();
 
     }
 
     public Registry(int port) throws Exception {
+        this(port, null);
+    }
+
+    public Registry(int port, SelectorTransport transport) throws Exception {
+        this.transport = transport;
         this.cache = new TCPConnectionsCache();
         this.registry = new Hashtable<>();
         this.port = port;
@@ -41,7 +49,7 @@ public class Registry extends Node{
     }
 
     public void init() throws Exception {
-        new Thread(this.tcpServer = new TCPServerThread(port), "Registry").start();
+        new Thread(this.tcpServer = new TCPServerThread(port, transport), "Registry").start();
         new Thread(() -> new CommandParser().registryParser(this), "Command Parser").start();
     }
 
@@ -69,7 +77,7 @@ public class Registry extends Node{
 
                 RegistryReportsRegistrationStatus RRRS = new RegistryReportsRegistrationStatus(id, message);
                 try {
-                    conn.sendData(RRRS.pack());
+                    conn.sendEvent(RRRS);
                 } catch (Exception err){
                     System.out.println(err);
                 }
@@ -162,10 +170,10 @@ public class Registry extends Node{
                 OverlayNodeSendsDeregistration ONSD = (OverlayNodeSendsDeregistration)e;
                 RegisterItem reg = this.registry.remove(ONSD.getId());
                 if (reg != null) {
-                    this.cache.getConnectionById(ONSD.getId()).sendData(new RegistryReportsDeregistrationStatus((byte) 1).pack());
+                    this.cache.getConnectionById(ONSD.getId()).sendEvent(new RegistryReportsDeregistrationStatus((byte) 1));
                     this.cache.delete(ONSD.getId());
                 } else {
-                    this.cache.getConnectionById(ONSD.getId()).sendData(new RegistryReportsDeregistrationStatus((byte) 0).pack());
+                    this.cache.getConnectionById(ONSD.getId()).sendEvent(new RegistryReportsDeregistrationStatus((byte) 0));
                 }
                 break;
         }
@@ -303,7 +311,7 @@ public class Registry extends Node{
         }
         this.cache.doForAll((TCPConnection conn) -> {
             try {
-                conn.sendData(new RegistryRequestsTaskInitiate(numDataPackets).pack());
+                conn.sendEvent(new RegistryRequestsTaskInitiate(numDataPackets));
             } catch (Exception e){
                 ;
             }
@@ -314,7 +322,7 @@ public class Registry extends Node{
     private void gatherTaskData(){
         this.cache.doForAll((TCPConnection conn) -> {
             try {
-                conn.sendData(new RegistryRequestsTrafficSummary().pack());
+                conn.sendEvent(new RegistryRequestsTrafficSummary());
             } catch (Exception e){
                 System.out.println("[" + Thread.currentThread().getName() + "] Error requesting task summary: " + e.getMessage());
                 e.printStackTrace();
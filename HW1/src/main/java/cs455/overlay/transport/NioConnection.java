@@ -0,0 +1,279 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.wireformats.Event;
+import cs455.overlay.wireformats.EventFactory;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author: Josh Mau
+ * Class: NioConnection
+ *  A TCPConnection whose IO is done by a SelectorLoop instead of its own
+ *  threads. Frames are the same [int length][data] as TCPConnection's.
+ *  Received frames are run through the EventFactory on the transport's
+ *  worker pool, one at a time and in order for each connection.
+ * */
+public class NioConnection extends TCPConnection {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_GATHER = 64;
+
+    private SocketChannel channel;
+    private SelectorLoop loop;
+    private ExecutorService workers;
+    private SelectionKey key;
+    private volatile boolean exitOnClose = false;
+    private volatile boolean closed = false;
+
+    // Each entry is one frame: its length header and the caller's data
+    private ConcurrentLinkedQueue<ByteBuffer[]> outQueue;
+    private AtomicBoolean writeScheduled;
+    private ByteBuffer[] gather;
+
+    private ByteBuffer readBuffer;
+    private ConcurrentLinkedQueue<byte[]> inQueue;
+    private AtomicBoolean dispatching;
+
+    NioConnection(SocketChannel channel, SelectorLoop loop, ExecutorService workers) throws IOException {
+        this.channel = channel;
+        this.channel.configureBlocking(false);
+        this.channel.socket().setTcpNoDelay(true);
+        this.loop = loop;
+        this.workers = workers;
+        this.outQueue = new ConcurrentLinkedQueue<>();
+        this.writeScheduled = new AtomicBoolean(false);
+        this.gather = new ByteBuffer[MAX_GATHER];
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.inQueue = new ConcurrentLinkedQueue<>();
+        this.dispatching = new AtomicBoolean(false);
+    }
+
+    @Override
+    public void init() {
+        this.loop.register(this);
+    }
+
+    @Override
+    public void sendData(byte[] data) {
+        sendData(data, data.length);
+    }
+
+    /**
+     * @Method: sendData
+     *  Queues one frame and, unless a flush is already pending, asks the
+     *  selector loop for a write. Safe to call from any thread. `data` is
+     *  written from directly, not copied, so the caller must not change it
+     *  afterwards.
+     * */
+    @Override
+    public void sendData(byte[] data, int length) {
+        if (this.closed) {
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(0, length);
+        this.outQueue.add(new ByteBuffer[] { header, ByteBuffer.wrap(data, 0, length) });
+        if (this.writeScheduled.compareAndSet(false, true)) {
+            this.loop.requestWrite(this);
+        }
+    }
+
+    /**
+     * @Method: sendEvent
+     *  Encodes `event` once, behind its length header, into the buffer the
+     *  frame is written from, and queues it as sendData does.
+     * */
+    @Override
+    public void sendEvent(Event event) {
+        if (this.closed) {
+            return;
+        }
+        int length = event.getLength();
+        ByteBuffer frame = ByteBuffer.allocate(4 + length);
+        frame.putInt(length);
+        event.encode(frame);
+        frame.flip();
+        this.outQueue.add(new ByteBuffer[] { frame });
+        if (this.writeScheduled.compareAndSet(false, true)) {
+            this.loop.requestWrite(this);
+        }
+    }
+
+    @Override
+    public Socket getSocket() {
+        return this.channel.socket();
+    }
+
+    @Override
+    public void exitOnClose() {
+        this.exitOnClose = true;
+    }
+
+    // Everything below runs on the selector loop's thread
+
+    void register(Selector selector) {
+        try {
+            // Frames may have been queued before init; their write request
+            // was dropped by enableWrites, so pick them up here
+            int ops = SelectionKey.OP_READ;
+            if (this.writeScheduled.get()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            this.key = this.channel.register(selector, ops, this);
+        } catch (ClosedChannelException cce) {
+            close();
+        }
+    }
+
+    void enableWrites() {
+        if (this.key == null) {
+            // Not registered yet; register() turns OP_WRITE on itself
+            return;
+        }
+        if (this.key.isValid()) {
+            this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * @Method: flush
+     *  Writes queued frames with gathering writes until the queue is empty
+     *  or the socket is full. OP_WRITE stays on only while data is left.
+     * */
+    void flush() {
+        try {
+            while (true) {
+                int n = 0;
+                for (ByteBuffer[] frame : this.outQueue) {
+                    if (n + frame.length > MAX_GATHER) {
+                        break;
+                    }
+                    for (ByteBuffer b : frame) {
+                        this.gather[n++] = b;
+                    }
+                }
+                if (n == 0) {
+                    this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_WRITE);
+                    this.writeScheduled.set(false);
+                    // A frame queued between the last poll and the reset
+                    // would otherwise sit until the next send
+                    if (!this.outQueue.isEmpty() && this.writeScheduled.compareAndSet(false, true)) {
+                        this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+                        continue;
+                    }
+                    return;
+                }
+                this.channel.write(this.gather, 0, n);
+                FLUSHES.increment();
+                for (int i = 0 ; i < n ; ) {
+                    ByteBuffer[] frame = this.outQueue.peek();
+                    if (frame[frame.length - 1].hasRemaining()) {
+                        // Socket is full; wait for the next OP_WRITE
+                        Arrays.fill(this.gather, 0, n, null);
+                        return;
+                    }
+                    this.outQueue.poll();
+                    FRAMES_SENT.increment();
+                    i += frame.length;
+                }
+                Arrays.fill(this.gather, 0, n, null);
+            }
+        } catch (IOException ioe) {
+            close();
+        }
+    }
+
+    /**
+     * @Method: read
+     *  Reads what is available and hands every complete frame to the
+     *  dispatcher. A frame larger than the buffer grows it.
+     * */
+    void read() {
+        int read;
+        try {
+            read = this.channel.read(this.readBuffer);
+        } catch (IOException ioe) {
+            read = -1;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+
+        this.readBuffer.flip();
+        while (this.readBuffer.remaining() >= 4) {
+            int dataLength = this.readBuffer.getInt(this.readBuffer.position());
+            if (dataLength < 0) {
+                close();
+                return;
+            }
+            if (this.readBuffer.remaining() < 4 + dataLength) {
+                if (4 + dataLength > this.readBuffer.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(4 + dataLength);
+                    bigger.put(this.readBuffer);
+                    this.readBuffer = bigger;
+                    dispatch();
+                    return;
+                }
+                break;
+            }
+            this.readBuffer.getInt();
+            byte[] data = new byte[dataLength + RECEIVE_HEADROOM];
+            this.readBuffer.get(data, 0, dataLength);
+            this.inQueue.add(data);
+        }
+        this.readBuffer.compact();
+        dispatch();
+    }
+
+    private void dispatch() {
+        if (!this.inQueue.isEmpty() && this.dispatching.compareAndSet(false, true)) {
+            this.workers.execute(() -> drain());
+        }
+    }
+
+    private void drain() {
+        EventFactory ef = EventFactory.getInstance();
+        byte[] data;
+        while ((data = this.inQueue.poll()) != null) {
+            try {
+                ef.run(this, data);
+            } catch (Exception e) {
+
+            }
+        }
+        this.dispatching.set(false);
+        dispatch();
+    }
+
+    private void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.key != null) {
+            this.key.cancel();
+        }
+        try {
+            this.channel.close();
+        } catch (IOException ioe) {
+            ;
+        }
+        this.outQueue.clear();
+        System.out.println("[" + Thread.currentThread().getName() + "] A Node has exited the overlay");
+        if (this.exitOnClose) {
+            System.out.println("Connection with the registry failed. System exiting...");
+            System.exit(1);
+        }
+    }
+}
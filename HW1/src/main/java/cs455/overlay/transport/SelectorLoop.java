@@ -0,0 +1,77 @@
+package cs455.overlay.transport;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @author: Josh Mau
+ * Class: SelectorLoop
+ *  One selector thread doing all reads and writes for the NioConnections
+ *  assigned to it. Other threads never touch a key's interest set; they
+ *  queue the change and wake the selector.
+ * */
+public class SelectorLoop implements Runnable {
+
+    private Selector selector;
+    private ConcurrentLinkedQueue<NioConnection> pending;
+    private ConcurrentLinkedQueue<NioConnection> writeRequests;
+
+    public SelectorLoop() throws IOException {
+        this.selector = Selector.open();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.writeRequests = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * @Method: register
+     *  Starts reading `conn` on this loop.
+     * */
+    void register(NioConnection conn) {
+        this.pending.add(conn);
+        this.selector.wakeup();
+    }
+
+    /**
+     * @Method: requestWrite
+     *  Turns on OP_WRITE for `conn` so its queued frames get flushed.
+     * */
+    void requestWrite(NioConnection conn) {
+        this.writeRequests.add(conn);
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                this.selector.select();
+
+                NioConnection conn;
+                while ((conn = this.pending.poll()) != null) {
+                    conn.register(this.selector);
+                }
+                while ((conn = this.writeRequests.poll()) != null) {
+                    conn.enableWrites();
+                }
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    conn = (NioConnection) key.attachment();
+                    if (key.isValid() && key.isWritable()) {
+                        conn.flush();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        conn.read();
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            System.out.println("[" + Thread.currentThread().getName() + "] Selector failed: " + ioe.getMessage());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package cs455.overlay.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author: Josh Mau
+ * Class: SelectorTransport
+ *  Runs every connection of a node on a fixed number of selector loops,
+ *  with events handed to a fixed pool of worker threads, so the number of
+ *  threads does not grow with the number of connections. Frames on the
+ *  wire are the same as TCPConnection's, so nodes using either transport
+ *  can talk to each other.
+ * */
+public class SelectorTransport {
+
+    public static final int DEFAULT_SELECTORS = 1;
+    public static final int DEFAULT_WORKERS = 2;
+
+    private SelectorLoop[] loops;
+    private ExecutorService workers;
+    private AtomicInteger next;
+
+    public SelectorTransport() throws IOException {
+        this(DEFAULT_SELECTORS, DEFAULT_WORKERS);
+    }
+
+    public SelectorTransport(int selectors, int workers) throws IOException {
+        this.loops = new SelectorLoop[selectors];
+        for (int i = 0 ; i < selectors ; i++) {
+            this.loops[i] = new SelectorLoop();
+            new Thread(this.loops[i], "Selector-" + i).start();
+        }
+        AtomicInteger workerId = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workers,
+                r -> new Thread(r, "Event Worker-" + workerId.getAndIncrement()));
+        this.next = new AtomicInteger();
+    }
+
+    /**
+     * @Method: connect
+     *  Opens a connection to host:port. As with a TCPConnection, nothing is
+     *  read until `init` is called.
+     * */
+    public TCPConnection connect(String host, int port) throws IOException {
+        return adopt(SocketChannel.open(new InetSocketAddress(host, port)));
+    }
+
+    /**
+     * @Method: adopt
+     *  Wraps an already connected channel, assigning it to the next
+     *  selector loop round-robin.
+     * */
+    public TCPConnection adopt(SocketChannel channel) throws IOException {
+        SelectorLoop loop = this.loops[(this.next.getAndIncrement() & Integer.MAX_VALUE) % this.loops.length];
+        return new NioConnection(channel, loop, this.workers);
+    }
+
+    /**
+     * @Method: forName
+     *  Returns a SelectorTransport for "nio", or null for the default
+     *  "threads" transport.
+     * */
+    public static SelectorTransport forName(String name) throws IOException {
+        switch (name.toLowerCase()) {
+            case "nio":
+                return new SelectorTransport();
+            case "threads":
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown transport \"" + name + "\". Use threads or nio.");
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package cs455.overlay.transport;
 
+import cs455.overlay.wireformats.Event;
 import cs455.overlay.wireformats.EventFactory;
 
 import java.io.DataInputStream;
@@ -7,13 +8,29 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TCPConnection {
 
+    // Most bytes the sender writes in one call, unless a single frame is larger
+    public static final int SEND_BUDGET = 64 * 1024;
+    // How long the sender waits for more frames before writing a partial
+    // batch; 0 writes whatever is queued straight away
+    public static final long LINGER_MICROS = Long.getLong("cs455.overlay.lingerMicros", 0);
+
+    // Spare bytes after each received frame, so a relay can append its id
+    // to a data packet in place
+    public static final int RECEIVE_HEADROOM = 4;
+
+    static final LongAdder FRAMES_SENT = new LongAdder();
+    static final LongAdder FLUSHES = new LongAdder();
+
     private Socket socket = null;
     private boolean EXIT_ON_CLOSE = false;
-    private PriorityQueue<byte[]> outQueue;
+    // Each entry is an Event, encoded by the sender, or a ByteBuffer frame
+    private PriorityQueue<Object> outQueue;
     private PriorityQueue<byte[]> inQueue;
     private DataInputStream din;
     private DataOutputStream dout;
@@ -25,9 +42,9 @@ public class TCPConnection {
         this.socket = socket;
         this.din = new DataInputStream(this.socket.getInputStream());
         this.dout = new DataOutputStream(this.socket.getOutputStream());
-        this.outQueue = new PriorityQueue<>(new Comparator<byte[]>() {
+        this.outQueue = new PriorityQueue<>(new Comparator<Object>() {
             @Override
-            public int compare(byte[] o1, byte[] o2) {
+            public int compare(Object o1, Object o2) {
                 return 0;
             }
         });
@@ -43,6 +60,13 @@ public class TCPConnection {
 
     }
 
+    /**
+     * @Constructor: for subclasses that do their own IO, such as
+     *  NioConnection; no streams or threads are created.
+     * */
+    protected TCPConnection() {
+    }
+
     public void init(){
         try {
             receiverThread.start();
@@ -53,30 +77,117 @@ public class TCPConnection {
         }
     }
 
+    /**
+     * @Class: Sender
+     *  Takes every queued frame, up to SEND_BUDGET bytes, off the queue in
+     *  one go, then copies them into one buffer and writes it with a single
+     *  call. Events are encoded straight into that buffer. The queue is
+     *  only locked while frames are taken, so producers never wait on the
+     *  copying. If LINGER_MICROS is set, waits up to that long for more
+     *  frames before writing a partial batch.
+     * */
     private class Sender{
+        private byte[] batch = new byte[SEND_BUDGET];
+        private ByteBuffer batchBuffer = ByteBuffer.wrap(batch);
+        private ArrayList<Object> taken = new ArrayList<>();
+
         public Sender(){
             try {
                 while (true) {
-                    byte[] data = null;
+                    int length = 0;
                     synchronized (outQueue) {
-                        if (outQueue.peek() == null)
+                        while (outQueue.peek() == null)
                             outQueue.wait();
-                        data = outQueue.poll();
+                        long deadline = System.nanoTime() + LINGER_MICROS * 1000;
+                        while (true) {
+                            Object data = outQueue.peek();
+                            if (data == null) {
+                                long linger = deadline - System.nanoTime();
+                                if (linger <= 0)
+                                    break;
+                                outQueue.wait(linger / 1000000, (int) (linger % 1000000));
+                                continue;
+                            }
+                            int frameLength = 4 + frameLength(data);
+                            if (!taken.isEmpty() && length + frameLength > SEND_BUDGET)
+                                break;
+                            outQueue.poll();
+                            taken.add(data);
+                            length += frameLength;
+                        }
+                    }
+
+                    if (length > batch.length) {
+                        // A single frame larger than the budget
+                        batch = new byte[length];
+                        batchBuffer = ByteBuffer.wrap(batch);
                     }
-                    int dataLength = data.length;
-                    dout.writeInt(dataLength);
-                    dout.write(data, 0, dataLength);
+                    int offset = 0;
+                    for (Object data : taken)
+                        offset = put(data, offset);
+                    dout.write(batch, 0, offset);
                     dout.flush();
+                    FRAMES_SENT.add(taken.size());
+                    FLUSHES.increment();
+                    taken.clear();
+                    if (batch.length > SEND_BUDGET) {
+                        batch = new byte[SEND_BUDGET];
+                        batchBuffer = ByteBuffer.wrap(batch);
+                    }
                 }
             } catch (Exception e){
 
             }
         }
+
+        private int frameLength(Object data){
+            return data instanceof Event ? ((Event) data).getLength() : ((ByteBuffer) data).remaining();
+        }
+
+        private int put(Object data, int offset){
+            int dataLength = frameLength(data);
+            batch[offset] = (byte) (dataLength >>> 24);
+            batch[offset + 1] = (byte) (dataLength >>> 16);
+            batch[offset + 2] = (byte) (dataLength >>> 8);
+            batch[offset + 3] = (byte) dataLength;
+            if (data instanceof Event) {
+                batchBuffer.limit(offset + 4 + dataLength).position(offset + 4);
+                ((Event) data).encode(batchBuffer);
+                batchBuffer.clear();
+            } else {
+                ByteBuffer buffer = (ByteBuffer) data;
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position(), batch, offset + 4, dataLength);
+            }
+            return offset + 4 + dataLength;
+        }
     }
 
     public void sendData(byte[] data){
+        sendData(data, data.length);
+    }
+
+    /**
+     * @Method: sendData
+     *  Sends the first `length` bytes of `data` as one frame. The array is
+     *  not copied, so the caller must not change it afterwards.
+     * */
+    public void sendData(byte[] data, int length){
+        synchronized (this.outQueue){
+            this.outQueue.add(ByteBuffer.wrap(data, 0, length));
+            this.outQueue.notify();
+        }
+    }
+
+    /**
+     * @Method: sendEvent
+     *  Sends `event` as one frame, encoding it straight into the outgoing
+     *  buffer rather than packing it into an array of its own first. It
+     *  may be encoded after this returns, so the caller must not change
+     *  it afterwards.
+     * */
+    public void sendEvent(Event event){
         synchronized (this.outQueue){
-            this.outQueue.add(data);
+            this.outQueue.add(event);
             this.outQueue.notify();
         }
     }
@@ -88,7 +199,7 @@ public class TCPConnection {
         while(socket != null) {
             try {
                 dataLength = din.readInt();
-                data = new byte[dataLength];
+                data = new byte[dataLength + RECEIVE_HEADROOM];
                 din.readFully(data, 0, dataLength);
             } catch (SocketException se) {
                 System.out.println("[" + Thread.currentThread().getName() + "] SocketException: " + se.getMessage());
@@ -139,6 +250,16 @@ public class TCPConnection {
         }
     }
 
+    /**
+     * @Method: getFramesPerFlush
+     *  Average frames written per socket write across all connections in
+     *  this process, or 0 if nothing has been sent.
+     * */
+    public static double getFramesPerFlush(){
+        long flushes = FLUSHES.sum();
+        return flushes == 0 ? 0 : (double) FRAMES_SENT.sum() / flushes;
+    }
+
     public Socket getSocket(){
         return this.socket;
     }
@@ -1,5 +1,7 @@
 package cs455.overlay.transport;
 
+import cs455.overlay.routing.RoutingTable;
+
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Predicate;
@@ -11,6 +13,8 @@ import java.util.function.Predicate;
 public class TCPConnectionsCache {
 
     HashMap<Integer, TCPConnection> connections;
+    private volatile TCPConnection[] nextHops = new TCPConnection[0];
+    private volatile TCPConnection beyondHop;
 
     public TCPConnectionsCache(){
         this.connections = new HashMap<>();
@@ -39,6 +43,11 @@ public class TCPConnectionsCache {
         }
     }
 
+    /**
+     * @Method: getNearestId
+     *  The connection to `id` if there is one, else to the highest id below
+     *  it, else (wrapping round the overlay) to the highest id of all.
+     * */
     public TCPConnection getNearestId(int id){
         int currentMin = -1;
         int currentMax = -1;
@@ -47,7 +56,7 @@ public class TCPConnectionsCache {
             if (val == id){
                 return this.connections.get(val);
             }
-            if (val < id){
+            if (val < id && val > currentMin){
                 currentMin = val;
             }
             if (val > currentMax) {
@@ -59,6 +68,54 @@ public class TCPConnectionsCache {
         return this.connections.get(currentMin);
     }
 
+    /**
+     * @Method: buildNextHops
+     *  Precomputes getNearestId, over the routes in `routes` that have a
+     *  connection, for every id up to the highest in `nodes`, so getNextHop
+     *  is a single array load. Ids above that all wrap to the highest
+     *  route. Call once the connections for `routes` have been added.
+     * */
+    public void buildNextHops(RoutingTable routes, int[] nodes){
+        int maxId = -1;
+        for (int i = 0 ; i < nodes.length ; i++){
+            maxId = Math.max(maxId, nodes[i]);
+        }
+        TCPConnection[] hops = new TCPConnection[maxId + 1];
+        for (int id = 0 ; id < hops.length ; id++){
+            hops[id] = nearestRoute(routes, id);
+        }
+        this.beyondHop = nearestRoute(routes, Integer.MAX_VALUE);
+        this.nextHops = hops;
+    }
+
+    private TCPConnection nearestRoute(RoutingTable routes, int id){
+        int lower = -1;
+        int highest = -1;
+        for (int j = 0 ; j < routes.getTableSize() ; j++){
+            int guid = routes.getRoute(j).getGuid();
+            if (!this.connections.containsKey(guid))
+                continue;
+            if (guid <= id && guid > lower)
+                lower = guid;
+            if (guid > highest)
+                highest = guid;
+        }
+        return this.connections.get(lower != -1 ? lower : highest);
+    }
+
+    /**
+     * @Method: getNextHop
+     *  The connection to forward a packet for `id` on, as set up by
+     *  buildNextHops, or null if `id` is negative or no route has a
+     *  connection.
+     * */
+    public TCPConnection getNextHop(int id){
+        TCPConnection[] hops = this.nextHops;
+        if (id < 0)
+            return null;
+        return id < hops.length ? hops[id] : this.beyondHop;
+    }
+
     public void delete(int id){
         this.connections.remove(id);
     }
@@ -3,16 +3,37 @@ package cs455.overlay.transport;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 public class TCPServerThread implements Runnable {
 
     private ServerSocket server;
+    private ServerSocketChannel channel;
+    private SelectorTransport transport;
 
     public TCPServerThread(int port) throws IOException {
         this.server = new ServerSocket(port);
     }
 
+    /**
+     * @Constructor: accepted connections are handed to `transport`
+     *  instead of each getting its own threads. A null transport is the
+     *  same as TCPServerThread(port).
+     * */
+    public TCPServerThread(int port, SelectorTransport transport) throws IOException {
+        if (transport == null) {
+            this.server = new ServerSocket(port);
+            return;
+        }
+        this.transport = transport;
+        this.channel = ServerSocketChannel.open();
+        this.channel.bind(new InetSocketAddress(port));
+        this.server = this.channel.socket();
+    }
+
     @Override
     public void run() {
         try {
@@ -22,8 +43,14 @@ public class TCPServerThread implements Runnable {
         }
         try {
             while(true){
-                Socket socket = server.accept();
-                TCPConnection conn = new TCPConnection(socket);
+                TCPConnection conn;
+                if (transport != null) {
+                    SocketChannel socket = channel.accept();
+                    conn = transport.adopt(socket);
+                } else {
+                    Socket socket = server.accept();
+                    conn = new TCPConnection(socket);
+                }
                 conn.init();
             }
         } catch (IOException ioe){
@@ -0,0 +1,41 @@
+package cs455.overlay.wireformats;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Class: Codec
+ *  Encodings shared by the wireformats: byte arrays (ip addresses) and
+ *  strings are a one byte length followed by the bytes.
+ * */
+public class Codec {
+
+    private Codec() {
+    }
+
+    public static int bytesLength(byte[] b) {
+        return 1 + b.length;
+    }
+
+    public static void putBytes(ByteBuffer dst, byte[] b) {
+        dst.put((byte) b.length);
+        dst.put(b);
+    }
+
+    public static byte[] getBytes(ByteBuffer src) {
+        byte[] b = new byte[src.get()];
+        src.get(b);
+        return b;
+    }
+
+    public static int stringLength(String s) {
+        return 1 + s.getBytes().length;
+    }
+
+    public static void putString(ByteBuffer dst, String s) {
+        putBytes(dst, s.getBytes());
+    }
+
+    public static String getString(ByteBuffer src) {
+        return new String(getBytes(src));
+    }
+}
@@ -1,13 +1,50 @@
 package cs455.overlay.wireformats;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+/**
+ * @Class: Event
+ *  Base for every wireformat. Subclasses only encode into and decode
+ *  from a ByteBuffer at its position; `pack` and `craft` are the byte[]
+ *  forms built on top of that.
+ * */
 public abstract class Event {
 
     private byte type;
 
-    public abstract byte[] pack() throws IOException;
-    public abstract void craft(byte[] b);
     public abstract int getType();
 
+    /**
+     * @Method: getLength
+     *  Number of bytes `encode` will write.
+     * */
+    public abstract int getLength();
+
+    /**
+     * @Method: encode
+     *  Writes this event at dst's position, advancing it by getLength().
+     * */
+    public abstract void encode(ByteBuffer dst);
+
+    /**
+     * @Method: decode
+     *  Reads this event's fields from src's position, advancing past them.
+     * */
+    public abstract void decode(ByteBuffer src);
+
+    public byte[] pack() throws IOException {
+        byte[] data = new byte[getLength()];
+        encode(ByteBuffer.wrap(data));
+        return data;
+    }
+
+    public void craft(byte[] b) {
+        try {
+            decode(ByteBuffer.wrap(b));
+        } catch (RuntimeException e) {
+            ;
+        }
+    }
+
 }
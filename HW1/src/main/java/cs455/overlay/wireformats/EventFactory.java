@@ -17,6 +17,8 @@ public class EventFactory {
 
     public void run(TCPConnection conn, byte[] b){
         try {
+            if (b[0] == Protocol.OVERLAY_NODE_SENDS_DATA && node.relay(conn, b))
+                return;
             node.onEvent(conn, getType(b));
         } catch (Exception e){
             System.out.println(e.getMessage());
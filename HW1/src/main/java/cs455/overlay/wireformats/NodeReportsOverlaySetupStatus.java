@@ -1,12 +1,7 @@
 package cs455.overlay.wireformats;
 
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
+
 import java.util.Arrays;
 
 public class NodeReportsOverlaySetupStatus extends Event {
@@ -25,42 +20,22 @@ public class NodeReportsOverlaySetupStatus extends Event {
     }
 
     @Override
-    public byte[] pack() throws IOException {
-        byte[] data = null;
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
-
-        dout.writeByte(this.type);
-        dout.writeInt(this.statusOrId);
-        dout.writeByte(this.message.getBytes().length);
-        dout.write(this.message.getBytes(), 0, this.message.getBytes().length);
-        dout.flush();
-
-        data = bout.toByteArray();
-
-        bout.close();
-        dout.close();
-        return data;
+    public int getLength() {
+        return 1 + 4 + Codec.stringLength(this.message);
     }
 
     @Override
-    public void craft(byte[] data) {
-        ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-
-        try {
-            this.type = din.readByte();
-            this.statusOrId = din.readInt();
-            byte length = din.readByte();
-            byte[] messageBytes = new byte[length];
-            din.readFully(messageBytes);
-            this.message = new String(messageBytes);
+    public void encode(ByteBuffer dst) {
+        dst.put(this.type);
+        dst.putInt(this.statusOrId);
+        Codec.putString(dst, this.message);
+    }
 
-            bin.close();
-            din.close();
-        } catch (Exception e){
-            ;
-        }
+    @Override
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.statusOrId = src.getInt();
+        this.message = Codec.getString(src);
     }
 
     @Override
@@ -1,12 +1,7 @@
 package cs455.overlay.wireformats;
 
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
+
 import java.net.InetAddress;
 
 public class OverlayNodeReportsTaskFinished extends Event {
@@ -27,37 +22,24 @@ public class OverlayNodeReportsTaskFinished extends Event {
     }
 
     @Override
-    public byte[] pack() throws IOException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
-
-        dout.writeByte(this.type);
-        dout.writeByte(this.ip.length);
-        for (int i = 0 ; i < this.ip.length ; i++){
-            dout.writeByte(this.ip[i]);
-        }
-        dout.writeInt(this.port);
-        dout.writeInt(this.guid);
-        dout.flush();
-
-        return bout.toByteArray();
+    public int getLength() {
+        return 1 + Codec.bytesLength(this.ip) + 4 + 4;
     }
 
     @Override
-    public void craft(byte[] data) {
-        ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-
-        try {
-            this.type = din.readByte();
-            int length = din.readByte();
-            this.ip = new byte[length];
-            din.readFully(this.ip);
-            this.port = din.readInt();
-            this.guid = din.readInt();
-        } catch (Exception e){
+    public void encode(ByteBuffer dst) {
+        dst.put((byte) this.type);
+        Codec.putBytes(dst, this.ip);
+        dst.putInt(this.port);
+        dst.putInt(this.guid);
+    }
 
-        }
+    @Override
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.ip = Codec.getBytes(src);
+        this.port = src.getInt();
+        this.guid = src.getInt();
     }
 
     @Override
@@ -1,12 +1,6 @@
 package cs455.overlay.wireformats;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class OverlayNodeReportsTrafficSummary extends Event {
 
@@ -46,46 +40,30 @@ public class OverlayNodeReportsTrafficSummary extends Event {
     }
 
     @Override
-    public byte[] pack() throws IOException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
-
-        dout.writeByte(this.type);
-        dout.writeInt(this.id);
-        dout.writeInt(this.packetsSent);
-        dout.writeInt(this.packetsRelayed);
-        dout.writeLong(this.sumSent);
-        dout.writeInt(this.packetsReceived);
-        dout.writeLong(sumReceived);
-        dout.flush();
-
-        byte[] data = bout.toByteArray();
-        bout.close();
-        dout.close();
-
-        return data;
+    public int getLength() {
+        return 1 + 4 + 4 + 4 + 8 + 4 + 8;
+    }
 
+    @Override
+    public void encode(ByteBuffer dst) {
+        dst.put(this.type);
+        dst.putInt(this.id);
+        dst.putInt(this.packetsSent);
+        dst.putInt(this.packetsRelayed);
+        dst.putLong(this.sumSent);
+        dst.putInt(this.packetsReceived);
+        dst.putLong(this.sumReceived);
     }
 
     @Override
-    public void craft(byte[] data) {
-        ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-
-        try {
-            this.type = din.readByte();
-            this.id = din.readInt();
-            this.packetsSent = din.readInt();
-            this.packetsRelayed = din.readInt();
-            this.sumSent = din.readLong();
-            this.packetsReceived = din.readInt();
-            this.sumReceived = din.readLong();
-
-            bin.close();
-            din.close();
-        } catch (Exception e){
-
-        }
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.id = src.getInt();
+        this.packetsSent = src.getInt();
+        this.packetsRelayed = src.getInt();
+        this.sumSent = src.getLong();
+        this.packetsReceived = src.getInt();
+        this.sumReceived = src.getLong();
     }
 
     @Override
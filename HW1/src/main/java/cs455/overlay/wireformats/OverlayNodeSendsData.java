@@ -1,16 +1,16 @@
 package cs455.overlay.wireformats;
 
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 public class OverlayNodeSendsData extends Event {
 
+    // Field offsets, for reading a packet in place (see OverlayNodeSendsDataView)
+    public static final int DESTINATION_OFFSET = 1;
+    public static final int SOURCE_OFFSET = 5;
+    public static final int PAYLOAD_OFFSET = 9;
+    public static final int HOP_COUNT_OFFSET = 13;
+    public static final int TRACE_OFFSET = 17;
+
     private byte type = Protocol.OVERLAY_NODE_SENDS_DATA;
     private int destinationId;
     private int sourceId;
@@ -31,45 +31,32 @@ public class OverlayNodeSendsData extends Event {
     }
 
     @Override
-    public byte[] pack() throws IOException {
-        byte[] data = null;
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
+    public int getLength() {
+        return TRACE_OFFSET + 4 * this.trace.length;
+    }
 
-        dout.writeByte(this.type);
-        dout.writeInt(this.destinationId);
-        dout.writeInt(this.sourceId);
-        dout.writeInt(this.payload);
-        dout.writeInt(this.hopCount);
+    @Override
+    public void encode(ByteBuffer dst) {
+        dst.put(this.type);
+        dst.putInt(this.destinationId);
+        dst.putInt(this.sourceId);
+        dst.putInt(this.payload);
+        dst.putInt(this.hopCount);
         for (int i = 0 ; i < this.trace.length ; i++){
-            dout.writeInt(this.trace[i]);
+            dst.putInt(this.trace[i]);
         }
-        dout.flush();
-        data = bout.toByteArray();
-
-        bout.close();
-        dout.close();
-        return data;
     }
 
     @Override
-    public void craft(byte[] b) {
-        try {
-            ByteArrayInputStream bin = new ByteArrayInputStream(b);
-            DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-            this.type = din.readByte();
-            this.destinationId = din.readInt();
-            this.sourceId = din.readInt();
-            this.payload = din.readInt();
-            this.hopCount = din.readInt();
-            this.trace = new int[hopCount];
-            for (int i = 0 ; i < this.trace.length ; i++){
-                this.trace[i] = din.readInt();
-            }
-            bin.close();
-            din.close();
-        } catch (Exception e){
-            ;
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.destinationId = src.getInt();
+        this.sourceId = src.getInt();
+        this.payload = src.getInt();
+        this.hopCount = src.getInt();
+        this.trace = new int[hopCount];
+        for (int i = 0 ; i < this.trace.length ; i++){
+            this.trace[i] = src.getInt();
         }
     }
 
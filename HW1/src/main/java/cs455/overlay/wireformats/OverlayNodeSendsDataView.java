@@ -0,0 +1,56 @@
+package cs455.overlay.wireformats;
+
+import java.nio.ByteBuffer;
+
+import static cs455.overlay.wireformats.OverlayNodeSendsData.*;
+
+/**
+ * @Class: OverlayNodeSendsDataView
+ *  Flyweight over an encoded OverlayNodeSendsData. It reads fields, and
+ *  appends relay hops, in place, so the packet is never decoded into an
+ *  object. One view can be
+ *  re-pointed at any number of packets with `wrap`.
+ * */
+public class OverlayNodeSendsDataView {
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * @Method: wrap
+     *  Points this view at the packet starting at `offset` in `buffer`.
+     *  Positions and limits are ignored and left alone.
+     * */
+    public OverlayNodeSendsDataView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public OverlayNodeSendsDataView wrap(byte[] b) {
+        return wrap(ByteBuffer.wrap(b), 0);
+    }
+
+    public boolean isData() {
+        return buffer.get(offset) == Protocol.OVERLAY_NODE_SENDS_DATA;
+    }
+
+    public int getDestinationId() { return buffer.getInt(offset + DESTINATION_OFFSET); }
+    public int getSourceId() { return buffer.getInt(offset + SOURCE_OFFSET); }
+    public int getPayload() { return buffer.getInt(offset + PAYLOAD_OFFSET); }
+    public int getHopCount() { return buffer.getInt(offset + HOP_COUNT_OFFSET); }
+    public int getTrace(int i) { return buffer.getInt(offset + TRACE_OFFSET + 4 * i); }
+    public int getLength() { return TRACE_OFFSET + 4 * getHopCount(); }
+
+    /**
+     * @Method: appendTrace
+     *  Adds `id` to the end of the trace and bumps the hop count, in place.
+     *  The buffer needs 4 bytes free past getLength().
+     * */
+    public void appendTrace(int id) {
+        int hopCount = getHopCount();
+        buffer.putInt(offset + TRACE_OFFSET + 4 * hopCount, id);
+        buffer.putInt(offset + HOP_COUNT_OFFSET, hopCount + 1);
+    }
+
+}
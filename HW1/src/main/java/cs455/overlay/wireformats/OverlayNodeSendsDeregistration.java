@@ -1,12 +1,6 @@
 package cs455.overlay.wireformats;
 
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
 
 public class OverlayNodeSendsDeregistration extends Event {
 
@@ -33,41 +27,24 @@ public class OverlayNodeSendsDeregistration extends Event {
     }
 
     @Override
-    public byte[] pack() throws IOException {
-        byte[] data = null;
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
-
-        dout.writeByte(this.type);
-        dout.writeByte(this.ip.length);
-        dout.write(this.ip, 0, this.ip.length);
-        dout.writeInt(this.port);
-        dout.writeInt(id);
-        dout.flush();
-
-        data = bout.toByteArray();
-        bout.close();
-        dout.close();
-
-        return data;
+    public int getLength() {
+        return 1 + Codec.bytesLength(this.ip) + 4 + 4;
     }
 
     @Override
-    public void craft(byte[] data) {
-        ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-
-        try {
-            this.type = din.readByte();
-            int length = din.readByte();
-            this.ip = new byte[length];
-            din.readFully(this.ip);
-            this.port = din.readInt();
-            this.id = din.readInt();
-
-        } catch (Exception e){
+    public void encode(ByteBuffer dst) {
+        dst.put(this.type);
+        Codec.putBytes(dst, this.ip);
+        dst.putInt(this.port);
+        dst.putInt(this.id);
+    }
 
-        }
+    @Override
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.ip = Codec.getBytes(src);
+        this.port = src.getInt();
+        this.id = src.getInt();
     }
 
     @Override
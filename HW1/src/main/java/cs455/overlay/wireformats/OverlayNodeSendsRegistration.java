@@ -1,12 +1,6 @@
 package cs455.overlay.wireformats;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class OverlayNodeSendsRegistration extends Event{
 
@@ -25,39 +19,24 @@ public class OverlayNodeSendsRegistration extends Event{
         // Empty object to cast
     }
 
-    public byte[] pack() throws IOException{
-        byte[] data = null;
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
-
-        dout.writeByte(type);
-        dout.writeByte(length);
-        dout.write(ip);
-        dout.writeInt(port);
-
-        dout.flush();
-        data = bout.toByteArray();
-
-        bout.close();
-        dout.close();
-        return data;
+    @Override
+    public int getLength() {
+        return 1 + Codec.bytesLength(this.ip) + 4;
     }
 
-    public void craft(byte[] data) {
-        ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-
-        try {
-            this.type = din.readByte();
-            int length = din.readByte();
-            this.ip = new byte[length];
-            din.readFully(this.ip);
-            this.port = din.readInt();
-
-        } catch (Exception e){
-
-        }
+    @Override
+    public void encode(ByteBuffer dst) {
+        dst.put(this.type);
+        Codec.putBytes(dst, this.ip);
+        dst.putInt(this.port);
+    }
 
+    @Override
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.ip = Codec.getBytes(src);
+        this.length = (byte) this.ip.length;
+        this.port = src.getInt();
     }
 
     public String ipToString(){
@@ -1,6 +1,6 @@
 package cs455.overlay.wireformats;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class RegistryReportsDeregistrationStatus extends Event {
 
@@ -16,17 +16,20 @@ public class RegistryReportsDeregistrationStatus extends Event {
     }
 
     @Override
-    public byte[] pack() throws IOException {
-        byte[] data = new byte[2];
-        data[0] = type;
-        data[1] = successStatus;
-        return data;
+    public int getLength() {
+        return 2;
     }
 
     @Override
-    public void craft(byte[] data) {
-        this.type = data[0];
-        this.successStatus = data[1];
+    public void encode(ByteBuffer dst) {
+        dst.put(this.type);
+        dst.put(this.successStatus);
+    }
+
+    @Override
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.successStatus = src.get();
     }
 
     @Override
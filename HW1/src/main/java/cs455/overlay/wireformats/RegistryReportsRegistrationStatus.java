@@ -1,12 +1,6 @@
 package cs455.overlay.wireformats;
 
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
 
 public class RegistryReportsRegistrationStatus extends Event {
 
@@ -24,42 +18,22 @@ public class RegistryReportsRegistrationStatus extends Event {
     }
 
     @Override
-    public byte[] pack() throws IOException {
-        byte[] data = null;
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
-
-        dout.write(type);
-        dout.writeInt(id);
-        dout.write(this.message.getBytes().length);
-        dout.write(message.getBytes(), 0, this.message.getBytes().length);
-
-        dout.flush();
-        data = bout.toByteArray();
-
-        bout.close();
-        dout.close();
-        return data;
+    public int getLength() {
+        return 1 + 4 + Codec.stringLength(this.message);
     }
 
     @Override
-    public void craft(byte[] data) {
-        ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-
-        try {
-            this.type = din.readByte();
-            this.id = din.readInt();
-            int length = din.readByte();
-            byte[] messageBytes = new byte[length];
-            din.readFully(messageBytes);
-            this.message = new String(messageBytes);
+    public void encode(ByteBuffer dst) {
+        dst.put(this.type);
+        dst.putInt(this.id);
+        Codec.putString(dst, this.message);
+    }
 
-            bin.close();
-            din.close();
-        } catch (Exception e){
-            ;
-        }
+    @Override
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.id = src.getInt();
+        this.message = Codec.getString(src);
     }
 
     @Override
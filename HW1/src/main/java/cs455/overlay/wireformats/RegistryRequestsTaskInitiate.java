@@ -1,12 +1,6 @@
 package cs455.overlay.wireformats;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class RegistryRequestsTaskInitiate extends Event {
 
@@ -22,35 +16,20 @@ public class RegistryRequestsTaskInitiate extends Event {
     }
 
     @Override
-    public byte[] pack() throws IOException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
-
-        dout.writeByte(this.type);
-        dout.writeInt(numDataPackets);
-        dout.flush();
-
-        byte[] data = bout.toByteArray();
-        bout.close();
-        dout.close();
-
-        return data;
+    public int getLength() {
+        return 1 + 4;
     }
 
     @Override
-    public void craft(byte[] data) {
-        ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-
-        try {
-            this.type = din.readByte();
-            this.numDataPackets = din.readInt();
+    public void encode(ByteBuffer dst) {
+        dst.put((byte) this.type);
+        dst.putInt(this.numDataPackets);
+    }
 
-            bin.close();
-            din.close();
-        } catch (Exception e){
-            ;
-        }
+    @Override
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        this.numDataPackets = src.getInt();
     }
 
     @Override
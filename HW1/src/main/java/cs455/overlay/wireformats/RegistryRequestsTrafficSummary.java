@@ -1,19 +1,24 @@
 package cs455.overlay.wireformats;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class RegistryRequestsTrafficSummary extends Event {
 
     private byte type = Protocol.REGISTRY_REQUESTS_TRAFFIC_SUMMARY;
 
     @Override
-    public byte[] pack() throws IOException {
-        return new byte[] { this.type };
+    public int getLength() {
+        return 1;
     }
 
     @Override
-    public void craft(byte[] data) {
-        this.type = data[0];
+    public void encode(ByteBuffer dst) {
+        dst.put(this.type);
+    }
+
+    @Override
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
     }
 
     @Override
@@ -3,12 +3,7 @@ package cs455.overlay.wireformats;
 import cs455.overlay.routing.Route;
 import cs455.overlay.routing.RoutingTable;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
 
 public class RegistrySendsNodeManifest extends Event{
 
@@ -26,73 +21,57 @@ public class RegistrySendsNodeManifest extends Event{
     }
 
     @Override
-    public byte[] pack() {
-        byte[] data = null;
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(bout));
+    public int getLength() {
+        int length = 1 + 1;
+        for (int i = 0 ; i < routes.getTableSize() ; i++){
+            length += 4 + Codec.bytesLength(routes.getRoute(i).getIp()) + 4;
+        }
+        return length + 1 + 4 * nodes.length;
+    }
 
+    @Override
+    public void encode(ByteBuffer dst) {
         try {
-            dout.writeByte(this.type);
-            dout.writeByte(this.routes.getTableSize());
+            dst.put(this.type);
+            dst.put(this.routes.getTableSize());
 
             for (int i = 0 ; i < routes.getTableSize() ; i++){
                 Route r = routes.getRoute(i);
-
-                dout.writeInt(r.getGuid());
-                dout.writeByte(r.getIp().length);
-                for (int j = 0 ; j < r.getIp().length ; j++)
-                    dout.writeByte(r.getIp()[j]);
-                dout.writeInt(r.getPort());
+                dst.putInt(r.getGuid());
+                Codec.putBytes(dst, r.getIp());
+                dst.putInt(r.getPort());
             }
 
-            dout.writeByte(nodes.length);
-            for (int i = 0 ; i < (byte)nodes.length ; i++){
-                dout.writeInt(nodes[i]);
+            dst.put((byte) nodes.length);
+            for (int i = 0 ; i < nodes.length ; i++){
+                dst.putInt(nodes[i]);
             }
-
-            dout.flush();
-            data = bout.toByteArray();
-            bout.close();
-            dout.close();
-
         } catch (IndexOutOfBoundsException ioobe){
             throw new IndexOutOfBoundsException("Routing table may be empty: " + ioobe.getMessage());
-        } catch (Exception e){
-            System.out.println(e.getMessage());
         }
-
-        return data;
     }
 
     @Override
-    public void craft(byte[] data) {
-        ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        DataInputStream din = new DataInputStream(new BufferedInputStream(bin));
-
-        try {
-            this.type = din.readByte();
-            int tableSize = din.readByte();
-
-            for (int i = 0 ; i < tableSize ; i++){
-                int guid = din.readInt();
-                int length = din.readByte();
-                byte[] ip = new byte[length];
-                din.readFully(ip, 0, length);
-                int port = din.readInt();
+    public void decode(ByteBuffer src) {
+        this.type = src.get();
+        int tableSize = src.get();
+
+        for (int i = 0 ; i < tableSize ; i++){
+            int guid = src.getInt();
+            byte[] ip = Codec.getBytes(src);
+            int port = src.getInt();
+            try {
                 this.routes.addRoute(new Route(ip, port, guid));
+            } catch (Exception e){
+                throw new IllegalStateException(e.getMessage());
             }
-
-            int length = din.readByte();
-            this.nodes = new int[length];
-            for (int i = 0 ; i < length ; i++){
-                this.nodes[i] = din.readInt();
-            }
-            bin.close();
-            din.close();
-        } catch (Exception e){
-
         }
 
+        int length = src.get();
+        this.nodes = new int[length];
+        for (int i = 0 ; i < length ; i++){
+            this.nodes[i] = src.getInt();
+        }
     }
 
     public RoutingTable getRoutes() {
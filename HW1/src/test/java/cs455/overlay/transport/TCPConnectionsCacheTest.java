@@ -0,0 +1,109 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.routing.Route;
+import cs455.overlay.routing.RoutingTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @Class: TCPConnectionsCacheTest
+ *  The precomputed next-hop table has to route exactly as getNearestId
+ *  does: to the id itself, else the highest route below it, else round
+ *  to the highest route of all.
+ * */
+public class TCPConnectionsCacheTest {
+
+    private static final byte[] IP = { 127, 0, 0, 1 };
+    private static final int[] NODES = { 5, 10, 20, 30, 40, 50 };
+
+    private TCPConnectionsCache cache;
+    private RoutingTable routes;
+    private TCPConnection to10;
+    private TCPConnection to20;
+    private TCPConnection to40;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new TCPConnectionsCache();
+        routes = new RoutingTable();
+        routes.addRoute(new Route(IP, 5010, 10));
+        routes.addRoute(new Route(IP, 5020, 20));
+        routes.addRoute(new Route(IP, 5040, 40));
+        to10 = new TCPConnection() {};
+        to20 = new TCPConnection() {};
+        to40 = new TCPConnection() {};
+    }
+
+    private void connectAll() {
+        cache.addConnection(10, to10);
+        cache.addConnection(20, to20);
+        cache.addConnection(40, to40);
+    }
+
+    @Test
+    public void routesToIdOrHighestBelow() {
+        connectAll();
+        cache.buildNextHops(routes, NODES);
+
+        assertSame(to10, cache.getNextHop(10));
+        assertSame(to20, cache.getNextHop(20));
+        assertSame(to20, cache.getNextHop(30));
+        assertSame(to40, cache.getNextHop(50));
+    }
+
+    @Test
+    public void wrapsBelowLowestRoute() {
+        connectAll();
+        cache.buildNextHops(routes, NODES);
+
+        assertSame(to40, cache.getNextHop(5));
+        assertSame(to40, cache.getNextHop(0));
+    }
+
+    @Test
+    public void matchesGetNearestIdForEveryId() {
+        connectAll();
+        cache.buildNextHops(routes, NODES);
+
+        for (int id = 0; id <= 60; id++) {
+            assertSame("id " + id, cache.getNearestId(id), cache.getNextHop(id));
+        }
+    }
+
+    @Test
+    public void idsBeyondTheManifestWrapToHighest() {
+        connectAll();
+        cache.buildNextHops(routes, NODES);
+
+        assertSame(to40, cache.getNextHop(51));
+        assertSame(to40, cache.getNextHop(Integer.MAX_VALUE));
+        assertNull(cache.getNextHop(-1));
+    }
+
+    @Test
+    public void skipsRoutesThatFailedToConnect() {
+        cache.addConnection(10, to10);
+        cache.addConnection(40, to40);
+        cache.buildNextHops(routes, NODES);
+
+        assertSame(to10, cache.getNextHop(20));
+        assertSame(to10, cache.getNextHop(30));
+        assertSame(to40, cache.getNextHop(5));
+    }
+
+    @Test
+    public void noConnectionsMeansNoHop() {
+        cache.buildNextHops(routes, NODES);
+
+        assertNull(cache.getNextHop(20));
+        assertNull(cache.getNextHop(99));
+    }
+
+    @Test
+    public void noHopBeforeManifest() {
+        assertNull(cache.getNextHop(20));
+    }
+}
@@ -0,0 +1,169 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.routing.Route;
+import cs455.overlay.routing.RoutingTable;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @Class: CodecTest
+ *  The ByteBuffer encodings must stay byte for byte what the original
+ *  DataOutputStream marshalling wrote, so nodes built before and after
+ *  the change can share an overlay. Each expected array is written the
+ *  way the original pack() wrote it.
+ * */
+public class CodecTest {
+
+    private static final byte[] IP = { 10, 0, 0, 7 };
+
+    @Test
+    public void overlayNodeSendsDataMatchesOriginal() throws IOException {
+        OverlayNodeSendsData event = new OverlayNodeSendsData(12, 3, -42, new int[] { 5, 9 });
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        dout.writeByte(Protocol.OVERLAY_NODE_SENDS_DATA);
+        dout.writeInt(12);
+        dout.writeInt(3);
+        dout.writeInt(-42);
+        dout.writeInt(0);
+        dout.writeInt(5);
+        dout.writeInt(9);
+
+        assertArrayEquals(bout.toByteArray(), event.pack());
+    }
+
+    @Test
+    public void overlayNodeSendsDataRoundTrips() throws IOException {
+        OverlayNodeSendsData sent = new OverlayNodeSendsData(12, 3, -42, new int[0]);
+        sent.addTrace(7);
+        OverlayNodeSendsData received = new OverlayNodeSendsData();
+        received.craft(sent.pack());
+
+        assertEquals(12, received.getDestinationId());
+        assertEquals(3, received.getSourceId());
+        assertEquals(-42, received.getPayload());
+        assertEquals(1, received.getHopCount());
+        assertArrayEquals(new int[] { 7 }, received.getTrace());
+    }
+
+    @Test
+    public void relayViewAppendsTraceLikeDecodeAndPack() throws IOException {
+        OverlayNodeSendsData event = new OverlayNodeSendsData(12, 3, -42, new int[0]);
+        event.addTrace(5);
+        byte[] packed = event.pack();
+        byte[] frame = new byte[packed.length + 4];
+        System.arraycopy(packed, 0, frame, 0, packed.length);
+
+        OverlayNodeSendsDataView view = new OverlayNodeSendsDataView().wrap(frame);
+        view.appendTrace(8);
+        event.addTrace(8);
+
+        assertEquals(12, view.getDestinationId());
+        assertArrayEquals(event.pack(), frame);
+    }
+
+    @Test
+    public void registryReportsRegistrationStatusMatchesOriginal() throws IOException {
+        String message = "Registration request successful.";
+        RegistryReportsRegistrationStatus event = new RegistryReportsRegistrationStatus(4, message);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        dout.write(Protocol.REGISTRY_REPORTS_REGISTRATION_STATUS);
+        dout.writeInt(4);
+        dout.write(message.getBytes().length);
+        dout.write(message.getBytes());
+
+        assertArrayEquals(bout.toByteArray(), event.pack());
+
+        RegistryReportsRegistrationStatus received = new RegistryReportsRegistrationStatus();
+        received.craft(event.pack());
+        assertEquals(4, received.getId());
+        assertEquals(message, received.getMessage());
+    }
+
+    @Test
+    public void registrySendsNodeManifestMatchesOriginal() throws Exception {
+        RoutingTable routes = new RoutingTable();
+        routes.addRoute(new Route(IP, 5000, 17));
+        routes.addRoute(new Route(IP, 5001, 40));
+        int[] nodes = { 3, 17, 40, 99 };
+        RegistrySendsNodeManifest event = new RegistrySendsNodeManifest(routes, nodes);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        dout.writeByte(Protocol.REGISTRY_SENDS_NODE_MANIFEST);
+        dout.writeByte(2);
+        for (int[] route : new int[][] { { 17, 5000 }, { 40, 5001 } }) {
+            dout.writeInt(route[0]);
+            dout.writeByte(IP.length);
+            dout.write(IP);
+            dout.writeInt(route[1]);
+        }
+        dout.writeByte(nodes.length);
+        for (int node : nodes) {
+            dout.writeInt(node);
+        }
+
+        assertArrayEquals(bout.toByteArray(), event.pack());
+
+        RegistrySendsNodeManifest received = new RegistrySendsNodeManifest();
+        received.craft(event.pack());
+        assertEquals(2, received.getRoutes().getTableSize());
+        assertEquals(40, received.getRoutes().getRoute(1).getGuid());
+        assertArrayEquals(IP, received.getRoutes().getRoute(1).getIp());
+        assertArrayEquals(nodes, received.getNodes());
+    }
+
+    @Test
+    public void trafficSummaryMatchesOriginal() throws IOException {
+        OverlayNodeReportsTrafficSummary event =
+                new OverlayNodeReportsTrafficSummary(6, 100, 250, -123456789012L, 90, 987654321098L);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        dout.writeByte(Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY);
+        dout.writeInt(6);
+        dout.writeInt(100);
+        dout.writeInt(250);
+        dout.writeLong(-123456789012L);
+        dout.writeInt(90);
+        dout.writeLong(987654321098L);
+
+        assertArrayEquals(bout.toByteArray(), event.pack());
+    }
+
+    @Test
+    public void encodeWritesAtPositionAndAdvancesByLength() throws IOException {
+        OverlayNodeSendsData event = new OverlayNodeSendsData(1, 2, 3, new int[] { 4 });
+        ByteBuffer dst = ByteBuffer.allocate(4 + event.getLength() + 4);
+        dst.putInt(-1);
+        event.encode(dst);
+
+        assertEquals(4 + event.getLength(), dst.position());
+        byte[] written = new byte[event.getLength()];
+        System.arraycopy(dst.array(), 4, written, 0, written.length);
+        assertArrayEquals(event.pack(), written);
+    }
+
+    @Test
+    public void codecStringsAreLengthPrefixed() {
+        ByteBuffer dst = ByteBuffer.allocate(Codec.stringLength("overlay") + Codec.bytesLength(IP));
+        Codec.putString(dst, "overlay");
+        Codec.putBytes(dst, IP);
+
+        assertEquals(dst.capacity(), dst.position());
+        assertEquals(7, dst.get(0));
+        dst.flip();
+        assertEquals("overlay", Codec.getString(dst));
+        assertArrayEquals(IP, Codec.getBytes(dst));
+    }
+}
@@ -0,0 +1,93 @@
+package cs455.scaling.benchmarks;
+
+import cs455.scaling.Hashing;
+import cs455.scaling.server.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to open and close 100k connections against an in-process Server,
+ * optionally exchanging one message on each. After every iteration the
+ * server's connection table has to drain back to empty, so a leaked key
+ * or channel fails the run rather than just slowing it down.
+ *
+ * Connections are reset (SO_LINGER 0) instead of closed, as a crashing
+ * client would; a graceful close leaves each port in TIME_WAIT and runs
+ * out of ephemeral ports long before 100k.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = 10000)
+@Measurement(iterations = 5, batchSize = 100000)
+@Fork(1)
+public class ChurnBenchmark {
+
+    @Param({"0", "2"})
+    public int readerCount;
+
+    @Param({"false", "true"})
+    public boolean exchange;
+
+    private Server server;
+    private InetSocketAddress address;
+    private ByteBuffer message;
+    private ByteBuffer reply;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        int port = InProcessServer.freePort();
+        server = new Server(port, 4, readerCount);
+        InProcessServer.start(server, port);
+        address = new InetSocketAddress("localhost", port);
+        message = ByteBuffer.allocate(8192);
+        reply = ByteBuffer.allocate(Hashing.HEX_LENGTH);
+    }
+
+    @Benchmark
+    public void openClose() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+            if (exchange) {
+                message.clear();
+                while (message.hasRemaining()) {
+                    channel.write(message);
+                }
+                reply.clear();
+                while (reply.hasRemaining()) {
+                    if (channel.read(reply) < 0) {
+                        throw new IOException("Server closed connection");
+                    }
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void drained() throws InterruptedException {
+        for (int i = 0; i < 100 && server.getConnections().size() > 0; i++) {
+            Thread.sleep(100);
+        }
+        if (server.getConnections().size() > 0) {
+            throw new IllegalStateException("Connections leaked: " + server.getConnections());
+        }
+    }
+}
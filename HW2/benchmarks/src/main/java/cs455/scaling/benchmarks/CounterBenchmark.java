@@ -0,0 +1,42 @@
+package cs455.scaling.benchmarks;
+
+import cs455.scaling.Counter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Counter shared by every benchmark thread, the way all reader and
+ * worker threads bump the server's message count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterBenchmark {
+
+    private final Counter counter = new Counter();
+
+    @Benchmark
+    @Threads(1)
+    public void increment() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void incrementContended() {
+        counter.increment();
+    }
+}
@@ -0,0 +1,84 @@
+package cs455.scaling.benchmarks;
+
+import cs455.scaling.Hashing;
+import cs455.scaling.task.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one message into its reply: the digest on its own, the
+ * hex encoding on its own, and the whole of Task.process as a worker runs it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashingBenchmark {
+
+    @Param({"heap", "direct"})
+    public String bufferType;
+
+    private ByteBuffer message;
+    private ByteBuffer buffer;
+    private byte[] digest;
+    private ByteBuffer hex;
+
+    @Setup
+    public void setup() {
+        byte[] data = new byte[8192];
+        new Random(42).nextBytes(data);
+        message = ByteBuffer.wrap(data);
+        buffer = "direct".equals(bufferType) ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+        digest = Hashing.sha1(data).clone();
+        hex = ByteBuffer.allocate(Hashing.HEX_LENGTH);
+    }
+
+    private ByteBuffer fill() {
+        message.clear();
+        buffer.clear();
+        buffer.put(message);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] sha1() {
+        return Hashing.sha1(fill());
+    }
+
+    @Benchmark
+    public ByteBuffer hex() {
+        hex.clear();
+        Hashing.hex(digest, hex);
+        return hex;
+    }
+
+    @Benchmark
+    public ByteBuffer process() {
+        ByteBuffer b = fill();
+        Task.process(b);
+        return b;
+    }
+
+    @Benchmark
+    public ByteBuffer processFramed() {
+        ByteBuffer b = fill();
+        Task.processFramed(b, 1L);
+        return b;
+    }
+}
@@ -0,0 +1,40 @@
+package cs455.scaling.benchmarks;
+
+import cs455.scaling.server.Server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Runs a Server on a free loopback port inside the benchmark JVM.
+ */
+class InProcessServer {
+
+    static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    /**
+     * Starts `server`, which must have been built for `port`, and returns
+     * once it accepts connections. Accepts aren't logged, so printing
+     * doesn't end up being what a churn run measures.
+     */
+    static void start(Server server, int port) throws InterruptedException {
+        server.setLogAccepts(false);
+        Thread t = new Thread(server::init, "InProcess-Server");
+        t.setDaemon(true);
+        t.start();
+        for (int i = 0; i < 100; i++) {
+            try (SocketChannel probe = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+}
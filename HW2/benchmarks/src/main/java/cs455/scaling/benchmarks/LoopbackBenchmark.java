@@ -0,0 +1,94 @@
+package cs455.scaling.benchmarks;
+
+import cs455.scaling.Hashing;
+import cs455.scaling.server.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end messages per second through a Server running in the same
+ * JVM on loopback. Every benchmark thread is one client connection that
+ * sends a message and blocks for its 40 byte reply.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class LoopbackBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Loopback {
+
+        @Param({"1", "2", "4", "8", "16"})
+        public int poolSize;
+
+        @Param({"0", "2"})
+        public int readerCount;
+
+        int port;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            port = InProcessServer.freePort();
+            InProcessServer.start(new Server(port, poolSize, readerCount), port);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+
+        SocketChannel channel;
+        ByteBuffer message;
+        ByteBuffer reply;
+
+        @Setup(Level.Trial)
+        public void setup(Loopback loopback) throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress("localhost", loopback.port));
+            byte[] data = new byte[8192];
+            new Random().nextBytes(data);
+            message = ByteBuffer.wrap(data);
+            reply = ByteBuffer.allocate(Hashing.HEX_LENGTH);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer roundTrip(Connection c) throws IOException {
+        c.message.clear();
+        while (c.message.hasRemaining()) {
+            c.channel.write(c.message);
+        }
+        c.reply.clear();
+        while (c.reply.hasRemaining()) {
+            if (c.channel.read(c.reply) < 0) {
+                throw new IOException("Server closed connection");
+            }
+        }
+        return c.reply;
+    }
+}
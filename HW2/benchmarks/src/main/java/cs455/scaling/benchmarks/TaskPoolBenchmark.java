@@ -0,0 +1,75 @@
+package cs455.scaling.benchmarks;
+
+import cs455.scaling.task.Task;
+import cs455.scaling.task.TaskPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off cost of TaskPool.addTask with several submitting threads, as
+ * with multiple reader selectors. Each submitter waits for its own empty
+ * task to run before sending the next, so the score is the round trip
+ * from addTask to a worker picking the task up.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TaskPoolBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        @Param({"1", "2", "4", "8"})
+        public int poolSize;
+
+        TaskPool pool;
+
+        @Setup
+        public void setup() {
+            pool = new TaskPool(poolSize);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Submitter {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(0);
+        volatile boolean done;
+        Task task;
+
+        @Setup
+        public void setup() {
+            task = new Task(null, buffer) {
+                @Override
+                public void run() {
+                    done = true;
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public void handoff(Pool pool, Submitter submitter) {
+        submitter.done = false;
+        pool.pool.addTask(submitter.task);
+        while (!submitter.done) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package cs455.scaling;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of direct buffers. At most `capacity` buffers are ever
+ * allocated; once they are all leased, `lease` returns null and the caller
+ * is expected to stop reading and register with `onAvailable` until one is
+ * released.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int capacity;
+    private final ConcurrentLinkedQueue<ByteBuffer> free;
+    private final ConcurrentLinkedQueue<Runnable> waiters;
+    private final AtomicInteger allocated;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong exhausted;
+
+    public BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.free = new ConcurrentLinkedQueue<>();
+        this.waiters = new ConcurrentLinkedQueue<>();
+        this.allocated = new AtomicInteger();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.exhausted = new AtomicLong();
+    }
+
+    public ByteBuffer lease() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            hits.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        int n;
+        while ((n = allocated.get()) < capacity) {
+            if (allocated.compareAndSet(n, n + 1)) {
+                misses.incrementAndGet();
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+        }
+
+        // Another thread may have released between the poll and the check
+        buffer = free.poll();
+        if (buffer != null) {
+            hits.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        exhausted.incrementAndGet();
+        return null;
+    }
+
+    public void release(ByteBuffer buffer) {
+        free.add(buffer);
+        Runnable waiter = waiters.poll();
+        if (waiter != null) {
+            waiter.run();
+        }
+    }
+
+    /**
+     * Runs `resume` once a buffer may be available again. If one was
+     * released while the waiter was being added, it runs immediately.
+     */
+    public void onAvailable(Runnable resume) {
+        waiters.add(resume);
+        if (!free.isEmpty() || allocated.get() < capacity) {
+            Runnable waiter = waiters.poll();
+            if (waiter != null) {
+                waiter.run();
+            }
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getAvailable() {
+        return free.size() + (capacity - allocated.get());
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + " misses=" + getMisses() + " exhausted=" + getExhausted()
+                + " available=" + getAvailable() + "/" + capacity;
+    }
+}
@@ -1,27 +1,29 @@
 package cs455.scaling;
 
-import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Event counter that callers increment from any thread without taking a
+ * lock; getCount reads and resets it.
+ */
 public class Counter {
 
-    private Integer count;
+    private LongAdder count;
 
     public Counter() {
-        this.count = 0;
+        this.count = new LongAdder();
     }
 
-    public synchronized Integer getCount() {
-        int temp = count;
-        count = 0;
-        return temp;
+    public long getCount() {
+        return count.sumThenReset();
     }
 
-    public synchronized void increment() {
-        count += 1;
+    public void increment() {
+        count.increment();
     }
 
-    public synchronized void reset() {
-        count = 0;
+    public void reset() {
+        count.reset();
     }
 
 }
@@ -0,0 +1,116 @@
+package cs455.scaling;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-1 helpers shared by the client and server. Each thread keeps its own
+ * MessageDigest and output array, so hashing a message allocates nothing.
+ * Hex output is always the full 40 characters, leading zeros included.
+ */
+public class Hashing {
+
+    public static final int DIGEST_LENGTH = 20;
+    public static final int HEX_LENGTH = 40;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private Hashing() {}
+
+    /**
+     * Digests the remaining bytes of `data`, consuming them. The returned
+     * array belongs to the calling thread and is overwritten by its next
+     * call, so copy it if it needs to outlive that.
+     */
+    public static byte[] sha1(ByteBuffer data) {
+        State state = STATE.get();
+        state.digest.update(data);
+        try {
+            state.digest.digest(state.out, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        return state.out;
+    }
+
+    public static byte[] sha1(byte[] data) {
+        return sha1(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Writes the 20 raw digest bytes of `data` at dst's position.
+     */
+    public static void sha1Raw(ByteBuffer data, ByteBuffer dst) {
+        dst.put(sha1(data), 0, DIGEST_LENGTH);
+    }
+
+    /**
+     * Writes the 40 hex characters of `data`'s digest at dst's position.
+     */
+    public static void sha1Hex(ByteBuffer data, ByteBuffer dst) {
+        hex(sha1(data), dst);
+    }
+
+    public static void hex(byte[] digest, ByteBuffer dst) {
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            dst.put(HEX[(digest[i] >> 4) & 0xf]);
+            dst.put(HEX[digest[i] & 0xf]);
+        }
+    }
+
+    /**
+     * Replaces the `length` raw bytes at `off` in `buf` with their 2 *
+     * `length` hex characters, working back from the end so no byte is
+     * overwritten before it is read. Leaves the position after the last
+     * character.
+     */
+    public static void hex(ByteBuffer buf, int off, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            byte b = buf.get(off + i);
+            buf.put(off + 2 * i + 1, HEX[b & 0xf]);
+            buf.put(off + 2 * i, HEX[(b >> 4) & 0xf]);
+        }
+        buf.position(off + 2 * length);
+    }
+
+    public static String toHex(byte[] digest) {
+        char[] chars = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i++) {
+            chars[2 * i] = (char) HEX[(digest[i] >> 4) & 0xf];
+            chars[2 * i + 1] = (char) HEX[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parses HEX_LENGTH characters starting at `off` into DIGEST_LENGTH
+     * bytes of `out`.
+     */
+    public static void fromHex(byte[] hex, int off, byte[] out) {
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int hi = Character.digit(hex[off + 2 * i], 16);
+            int lo = Character.digit(hex[off + 2 * i + 1], 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("Not a hex digest");
+            }
+            out[i] = (byte) (hi << 4 | lo);
+        }
+    }
+
+    private static class State {
+        final MessageDigest digest;
+        final byte[] out = new byte[DIGEST_LENGTH];
+
+        State() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package cs455.scaling;
+
+/**
+ * Wire constants shared by the scaling client and server.
+ *
+ * Version 1 is the original protocol: the client sends MESSAGE_SIZE bytes
+ * and gets back the 40 hex characters of its SHA-1, in no particular
+ * order. It has no way to say how long a reply is, so the server only
+ * accepts version 1 clients when its handler's result is DIGEST_LENGTH
+ * bytes.
+ *
+ * A client that wants version 2 first sends a HELLO_LENGTH hello of
+ * [MAGIC][VERSION_2]. The server echoes it followed by [int result
+ * length], HELLO_REPLY_LENGTH bytes in all. After that every request is
+ * framed as [int length][long request id][payload] and every reply is
+ * [long request id][result length raw bytes], in whatever order the
+ * server finishes them.
+ */
+public interface Protocol {
+
+    int MESSAGE_SIZE = 8192;
+
+    int UNKNOWN = 0;
+    int VERSION_1 = 1;
+    int VERSION_2 = 2;
+
+    int MAGIC = 0x53343535;
+    int HELLO_LENGTH = 8;
+    int FRAME_HEADER_LENGTH = 12;
+    int HELLO_REPLY_LENGTH = HELLO_LENGTH + 4;
+    int REPLY_HEADER_LENGTH = 8;
+
+}
@@ -0,0 +1,301 @@
+package cs455.scaling.audit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only audit trail of every result the server returns. Workers
+ * `append` into a bounded lock-free ring (Vyukov's MPMC queue, used here
+ * with one consumer): a claim is one CAS, the record is copied into
+ * preallocated arrays, and the slot is published with a release store.
+ * If the ring is full the record is dropped and counted, so a slow disk
+ * never holds a worker up; the drop is still written to the log, as a
+ * marker record, so a reader can tell the trail is incomplete.
+ *
+ * This thread drains the ring into memory-mapped segment files
+ * (audit-NNNNNN.log) that are preallocated to `segmentBytes` and rolled
+ * when full. See the constants below for the layout.
+ */
+public class AuditLog extends Thread {
+
+    // Segment header: magic, record length, segment number, sequence of
+    // the first record, result length, then padding
+    public static final int MAGIC = 0x41554454;
+    public static final int HEADER_LENGTH = 32;
+    public static final int RESULT_LENGTH_OFFSET = 24;
+
+    // Record: sequence, connection id, wall-clock millis, result (zero
+    // padded to at least MIN_RESULT_FIELD), CRC32C of everything before it.
+    // A 20 byte SHA-1 result makes a 48 byte record.
+    public static final int RESULT_OFFSET = 24;
+    public static final int MIN_RESULT_FIELD = 8;
+
+    // A record with this connection id is a drop marker: its sequence is
+    // that of the next record written, and the first 8 bytes of its result
+    // are how many records were dropped just before it
+    public static final long DROP_MARKER = -1;
+
+    public static final int DEFAULT_RING_SIZE = 64 * 1024;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final long FORCE_INTERVAL_MILLIS = 1000;
+
+    private final Path directory;
+    private final int resultLength;
+    private final int fieldLength;
+    private final int recordLength;
+    private final int recordsPerSegment;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] connections;
+    private final long[] times;
+    private final byte[] results;
+    private final AtomicLong tail;
+    private long head;
+
+    private final LongAdder dropped;
+    private long droppedWritten;
+    private final AtomicLong written;
+    private volatile boolean closed;
+
+    private long segment;
+    private MappedByteBuffer out;
+    private final CRC32C crc;
+    private final byte[] record;
+    private final ByteBuffer recordBuffer;
+
+    public AuditLog(Path directory, int resultLength) throws IOException {
+        this(directory, resultLength, DEFAULT_SEGMENT_BYTES, DEFAULT_RING_SIZE);
+    }
+
+    public AuditLog(Path directory, int resultLength, long segmentBytes, int ringSize) throws IOException {
+        super("Audit Log");
+        setDaemon(true);
+        this.directory = directory;
+        this.resultLength = resultLength;
+        this.fieldLength = Math.max(resultLength, MIN_RESULT_FIELD);
+        this.recordLength = recordLength(resultLength);
+        this.recordsPerSegment = (int) ((segmentBytes - HEADER_LENGTH) / recordLength);
+        if (recordsPerSegment <= 0) {
+            throw new IllegalArgumentException("Segment too small: " + segmentBytes);
+        }
+        int size = Integer.highestOneBit(Math.max(2, ringSize) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.connections = new long[size];
+        this.times = new long[size];
+        this.results = new byte[size * fieldLength];
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.written = new AtomicLong();
+        this.crc = new CRC32C();
+        this.record = new byte[recordLength];
+        this.recordBuffer = ByteBuffer.wrap(record);
+
+        Files.createDirectories(directory);
+        this.segment = lastSegment(directory) + 1;
+    }
+
+    /**
+     * Queues a record of `length` bytes of `src` starting at `offset`,
+     * which must be the result length the log was opened with. Never blocks; returns
+     * false if the ring was full and the record was dropped.
+     */
+    public boolean append(long connection, ByteBuffer src, int offset, int length) {
+        long pos = tail.get();
+        while (true) {
+            int slot = (int) (pos & mask);
+            long diff = sequences.get(slot) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.increment();
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+
+        int slot = (int) (pos & mask);
+        connections[slot] = connection;
+        times[slot] = System.currentTimeMillis();
+        int base = slot * fieldLength;
+        for (int i = 0, n = Math.min(length, resultLength); i < n; i++) {
+            results[base + i] = src.get(offset + i);
+        }
+        sequences.lazySet(slot, pos + 1);
+        return true;
+    }
+
+    @Override
+    public void run() {
+        long lastForce = System.nanoTime();
+        try {
+            roll(0);
+            while (true) {
+                int drained = drain();
+                long now = System.nanoTime();
+                if (now - lastForce >= TimeUnit.MILLISECONDS.toNanos(FORCE_INTERVAL_MILLIS)) {
+                    out.force();
+                    lastForce = now;
+                }
+                if (drained == 0) {
+                    if (closed) {
+                        out.force();
+                        return;
+                    }
+                    // Producers never signal; polling keeps them off any lock
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("[" + getName() + "] Audit log failed, no longer writing: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops once everything already appended has been written and forced
+     * to disk.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(this);
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int drain() throws IOException {
+        int n = 0;
+        long drops = dropped.sum();
+        if (drops > droppedWritten) {
+            if (!out.hasRemaining()) {
+                roll(head);
+            }
+            writeMarker(head, drops - droppedWritten);
+            droppedWritten = drops;
+            n++;
+        }
+        while (true) {
+            int slot = (int) (head & mask);
+            if (sequences.get(slot) != head + 1) {
+                return n;
+            }
+            if (!out.hasRemaining()) {
+                roll(head);
+            }
+            write(head, slot);
+            sequences.lazySet(slot, head + mask + 1);
+            head++;
+            n++;
+            written.lazySet(head);
+        }
+    }
+
+    private void write(long seq, int slot) {
+        ByteBuffer r = recordBuffer;
+        r.clear();
+        r.putLong(seq).putLong(connections[slot]).putLong(times[slot]);
+        r.put(results, slot * fieldLength, fieldLength);
+        crc.reset();
+        crc.update(record, 0, recordLength - 4);
+        r.putInt((int) crc.getValue());
+        out.put(record);
+    }
+
+    private void writeMarker(long seq, long count) {
+        ByteBuffer r = recordBuffer;
+        r.clear();
+        r.putLong(seq).putLong(DROP_MARKER).putLong(System.currentTimeMillis());
+        r.putLong(count);
+        while (r.position() < recordLength - 4) {
+            r.put((byte) 0);
+        }
+        crc.reset();
+        crc.update(record, 0, recordLength - 4);
+        r.putInt((int) crc.getValue());
+        out.put(record);
+    }
+
+    private void roll(long firstSequence) throws IOException {
+        if (out != null) {
+            out.force();
+        }
+        Path file = segmentPath(directory, segment);
+        long size = HEADER_LENGTH + (long) recordsPerSegment * recordLength;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        out.putInt(MAGIC).putInt(recordLength).putLong(segment).putLong(firstSequence).putInt(resultLength);
+        out.position(HEADER_LENGTH);
+        segment++;
+    }
+
+    public static int recordLength(int resultLength) {
+        return RESULT_OFFSET + Math.max(resultLength, MIN_RESULT_FIELD) + 4;
+    }
+
+    public static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("audit-%06d.log", segment));
+    }
+
+    /**
+     * Highest segment number in `directory`, or -1 if there are none.
+     */
+    public static long lastSegment(Path directory) {
+        long last = -1;
+        File[] files = directory.toFile().listFiles();
+        if (files == null) {
+            return last;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith("audit-") && name.endsWith(".log")) {
+                try {
+                    last = Math.max(last, Long.parseLong(name.substring(6, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    ;
+                }
+            }
+        }
+        return last;
+    }
+
+    public long getAppended() {
+        return tail.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "appended=" + getAppended() + " written=" + getWritten() + " dropped=" + getDropped()
+                + " segment=" + (segment - 1);
+    }
+}
@@ -0,0 +1,162 @@
+package cs455.scaling.audit;
+
+import cs455.scaling.Hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.zip.CRC32C;
+
+/**
+ * Scans every segment in an audit log directory in order and checks it:
+ * the header, each record's checksum, and that sequence numbers run on
+ * without a break within a segment and from one segment to the next. A
+ * sequence restarting at 0 is a new server run. Records are all zeros
+ * past the last one written, which ends the segment. Drop markers, left
+ * where the server had to discard records, are reported as problems too.
+ */
+public class AuditReader {
+
+    private final Path directory;
+    private final boolean print;
+    private final CRC32C crc;
+    private byte[] record;
+    private ByteBuffer view;
+    private long records;
+    private long errors;
+    private long nextSequence;
+    private long dropped;
+    private boolean afterBad;
+
+    public AuditReader(Path directory, boolean print) {
+        this.directory = directory;
+        this.print = print;
+        this.crc = new CRC32C();
+    }
+
+    /**
+     * Returns the number of problems found.
+     */
+    public long verify() throws IOException {
+        long last = AuditLog.lastSegment(directory);
+        for (long s = 0; s <= last; s++) {
+            Path file = AuditLog.segmentPath(directory, s);
+            if (!file.toFile().exists()) {
+                continue;
+            }
+            verify(file, s);
+        }
+        System.out.println("Records: " + records + " Dropped: " + dropped + " Problems: " + errors);
+        return errors;
+    }
+
+    private void verify(Path file, long number) throws IOException {
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.capacity() < AuditLog.HEADER_LENGTH || in.getInt(0) != AuditLog.MAGIC
+                || in.getLong(8) != number) {
+            problem(file, "bad header");
+            return;
+        }
+        int recordLength = in.getInt(4);
+        int resultLength = in.getInt(AuditLog.RESULT_LENGTH_OFFSET);
+        if (resultLength <= 0 || recordLength != AuditLog.recordLength(resultLength)) {
+            problem(file, "bad record length " + recordLength + " for " + resultLength + " byte results");
+            return;
+        }
+        if (record == null || record.length != recordLength) {
+            record = new byte[recordLength];
+            view = ByteBuffer.wrap(record);
+        }
+        int checksumOffset = recordLength - 4;
+        long first = in.getLong(16);
+        if (first != 0 && first != nextSequence) {
+            problem(file, "starts at sequence " + first + ", expected " + nextSequence);
+        }
+        nextSequence = first;
+
+        long count = 0;
+        long firstTime = 0;
+        long lastTime = 0;
+        in.position(AuditLog.HEADER_LENGTH);
+        while (in.remaining() >= recordLength) {
+            in.get(record);
+            if (isEmpty()) {
+                break;
+            }
+            crc.reset();
+            crc.update(record, 0, checksumOffset);
+            if ((int) crc.getValue() != view.getInt(checksumOffset)) {
+                problem(file, "bad checksum at offset " + (in.position() - recordLength));
+                // It may have been a record, which took a sequence, or a drop
+                // marker, which didn't; either is fine for the next one
+                afterBad = true;
+                continue;
+            }
+            long seq = view.getLong(0);
+            if (view.getLong(8) == AuditLog.DROP_MARKER) {
+                long lost = view.getLong(AuditLog.RESULT_OFFSET);
+                dropped += lost;
+                problem(file, lost + " records dropped before sequence " + seq);
+                continue;
+            }
+            if (seq != nextSequence && !(afterBad && seq == nextSequence + 1)) {
+                problem(file, "sequence " + seq + " after " + (nextSequence - 1));
+            }
+            afterBad = false;
+            nextSequence = seq + 1;
+            long time = view.getLong(16);
+            if (count == 0) {
+                firstTime = time;
+            }
+            lastTime = time;
+            count++;
+            if (print) {
+                byte[] result = new byte[resultLength];
+                System.arraycopy(record, AuditLog.RESULT_OFFSET, result, 0, resultLength);
+                System.out.println(seq + " " + view.getLong(8) + " " + time + " " + Hashing.toHex(result));
+            }
+        }
+        records += count;
+        System.out.println(file.getFileName() + ": " + count + " records"
+                + (count > 0 ? " from " + new Date(firstTime) + " to " + new Date(lastTime) : ""));
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    private boolean isEmpty() {
+        for (byte b : record) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void problem(Path file, String message) {
+        errors++;
+        System.out.println(file.getFileName() + ": " + message);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("USAGE: java cs455.scaling.audit.AuditReader [Log Directory] [Print Records (optional): true|false]");
+            System.exit(1);
+        }
+        AuditReader reader = new AuditReader(Paths.get(args[0]), args.length == 2 && Boolean.parseBoolean(args[1]));
+        System.exit(reader.verify() == 0 ? 0 : 1);
+    }
+}
@@ -1,19 +1,19 @@
 package cs455.scaling.client;
 
 import cs455.scaling.Counter;
+import cs455.scaling.Hashing;
+import cs455.scaling.Protocol;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
-import java.math.BigInteger;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.security.MessageDigest;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Random;
 
 public class Client {
@@ -25,24 +25,80 @@ public class Client {
     private ByteBuffer buffer;
     private Selector selector;
     public final int BUFFER_SIZE = 8192;
-    private HashList hashList;
+    public final int HELLO_TIMEOUT_MILLIS = 5 * 1000;
+    private OutstandingHashes hashes;
+    private ByteBuffer replyBuffer;
+    private byte[] replyDigest;
     private Counter sendCounter;
     private Counter receivedCounter;
+    private int protocol;
+    private boolean negotiated;
+    private PendingRequests pending;
+    private ByteBuffer header;
+    private long nextRequestId;
+    private Corpus.Cursor corpus;
+    private int resultLength;
 
     public Client(String serverHost, int serverPort, float messageRate) {
+        this(serverHost, serverPort, messageRate, 0);
+    }
+
+    /**
+     * maxOutstanding > 0 bounds how many unanswered hashes are tracked;
+     * older ones are evicted and reported as stale.
+     */
+    public Client(String serverHost, int serverPort, float messageRate, int maxOutstanding) {
+        this(serverHost, serverPort, messageRate, maxOutstanding, Protocol.VERSION_1);
+    }
+
+    /**
+     * With Protocol.VERSION_2 the client negotiates framed requests and
+     * matches replies by request id; maxOutstanding is then the size of
+     * the in-flight window (1024 if 0).
+     */
+    public Client(String serverHost, int serverPort, float messageRate, int maxOutstanding, int protocol) {
+        this.protocol = protocol;
+        if (protocol == Protocol.VERSION_2) {
+            this.pending = new PendingRequests(maxOutstanding > 0 ? maxOutstanding : 1024);
+            this.header = ByteBuffer.allocate(Protocol.FRAME_HEADER_LENGTH);
+        }
         this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
         this.serverHost = serverHost;
         this.serverPort = serverPort;
         this.messageRate = messageRate;
-        this.hashList = new HashList();
+        this.hashes = new OutstandingHashes(maxOutstanding);
+        this.replyBuffer = ByteBuffer.allocate(Hashing.HEX_LENGTH);
+        this.replyDigest = new byte[Hashing.DIGEST_LENGTH];
         this.sendCounter = new Counter();
         this.receivedCounter = new Counter();
     }
 
+    /**
+     * Replays messages from `corpus` instead of generating random ones.
+     * Call before init.
+     */
+    public void setCorpus(Corpus corpus) {
+        if (this.protocol != Protocol.VERSION_2 && corpus.getMessageSize() != BUFFER_SIZE) {
+            throw new IllegalArgumentException("Version 1 messages must be " + BUFFER_SIZE + " bytes");
+        }
+        // The server drops a connection that sends a frame it can't buffer
+        if (corpus.getMessageSize() < 1 || corpus.getMessageSize() > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Version 2 messages must be 1 to " + BUFFER_SIZE + " bytes");
+        }
+        this.corpus = corpus.cursor(new Random().nextInt());
+    }
+
     public void counters() {
         while (true) {
             try {
                 System.out.println("Messages sent: " + this.sendCounter.getCount() + "\nMessages received: " + this.receivedCounter.getCount());
+                if (this.protocol == Protocol.VERSION_2) {
+                    System.out.println("In flight: " + this.pending.getInFlight() + "/" + this.pending.getWindow() + " Stale: " + this.pending.getStale()
+                            + " Mismatched: " + this.pending.getMismatched() + " Unmatched: " + this.pending.getUnmatched());
+                } else {
+                    System.out.println("Outstanding: " + this.hashes.size() + " Stale: " + this.hashes.getEvicted()
+                            + " Unmatched: " + this.hashes.getUnmatched());
+                }
                 Thread.sleep(20 * 1000);
             } catch (Exception e) {
             }
@@ -57,9 +113,20 @@ public class Client {
             this.channel.register(this.selector, SelectionKey.OP_CONNECT);
             this.channel.connect(new InetSocketAddress(this.serverHost, this.serverPort));
             new Thread(() -> counters()).start();
+            long helloDeadline = System.currentTimeMillis() + HELLO_TIMEOUT_MILLIS;
 
             while(true){
-                selector.select();
+                if (this.protocol == Protocol.VERSION_2 && !this.negotiated) {
+                    // A version 1 server takes the hello as the start of a
+                    // message and never answers it
+                    long wait = helloDeadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        refused("No reply to the version 2 hello");
+                    }
+                    selector.select(wait);
+                } else {
+                    selector.select();
+                }
                 Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
 
                 while(keys.hasNext()) {
@@ -88,20 +155,30 @@ public class Client {
 
     private void writer() {
         while(!channel.isConnected());
+        Random r = new Random();
+        byte[] data = new byte[BUFFER_SIZE];
+        ByteBuffer random = ByteBuffer.wrap(data);
         while(true) {
-            this.buffer.clear();
-            byte[] data = new byte[8192];
-            Random r = new Random();
-            for (int i = 0 ; i < 8192 ; i++) {
-                data[i] = (byte)r.nextInt();
+            byte[] digest;
+            if (this.corpus != null) {
+                this.buffer = this.corpus.next();
+                digest = this.corpus.digest;
+            } else {
+                r.nextBytes(data);
+                random.clear();
+                this.buffer = random;
+                digest = Hashing.sha1(data);
             }
-            this.buffer = ByteBuffer.wrap(data);
 
             try {
-                SHA1FromBytes(buffer.array());
+                if (this.protocol == Protocol.VERSION_2) {
+                    writeFramed(digest);
+                } else {
+                    this.hashes.add(digest, System.nanoTime());
 
-                while (buffer.hasRemaining())
-                    this.channel.write(buffer);
+                    while (buffer.hasRemaining())
+                        this.channel.write(buffer);
+                }
                 this.sendCounter.increment();
                 Thread.sleep((long)(1000/this.messageRate));
             } catch (Exception e) {
@@ -112,23 +189,40 @@ public class Client {
 
     private void read(SelectionKey key) {
         SocketChannel channel = (SocketChannel)key.channel();
-        ByteBuffer buffer = ByteBuffer.allocate(40);
+        ByteBuffer buffer = this.replyBuffer;
         int read = 0;
 
         try {
-            read = channel.read(buffer);
-            buffer.flip();
-            byte[] data = new byte[buffer.limit()];
-            for (int i = 0 ; i < data.length ; i++) {
-                data[i] = buffer.get();
+            // Replies are fixed-size for the protocol in use; keep a partial
+            // one until the rest arrives and handle every complete one.
+            while ((read = channel.read(buffer)) > 0) {
+                if (buffer.hasRemaining()) {
+                    continue;
+                }
+                if (this.protocol == Protocol.VERSION_2) {
+                    if (!this.negotiated) {
+                        buffer = negotiated(buffer);
+                        continue;
+                    }
+                    // Only a SHA-1 result can be checked against what was sent
+                    this.pending.remove(buffer.getLong(0),
+                            this.resultLength == Hashing.DIGEST_LENGTH ? buffer.array() : null,
+                            Protocol.REPLY_HEADER_LENGTH);
+                } else {
+                    Hashing.fromHex(buffer.array(), 0, this.replyDigest);
+                    this.hashes.remove(this.replyDigest);
+                }
+                this.receivedCounter.increment();
+                buffer.clear();
             }
-            this.hashList.removeIfPresent(new String(data));
-            this.receivedCounter.increment();
         } catch (IOException e) {
             System.out.println(e.getMessage());
         }
 
         if (read == -1) {
+            if (this.protocol == Protocol.VERSION_2 && !this.negotiated) {
+                refused("Connection closed during the version 2 hello");
+            }
             System.out.println("Closed");
             return;
         }
@@ -140,61 +234,80 @@ public class Client {
             SocketChannel channel = (SocketChannel) key.channel();
             channel.finishConnect();
             key.interestOps(SelectionKey.OP_READ);
-            new Thread(() -> writer()).start();
+            if (this.protocol == Protocol.VERSION_2) {
+                // The writer starts once the server echoes the hello
+                ByteBuffer hello = ByteBuffer.allocate(Protocol.HELLO_LENGTH);
+                hello.putInt(Protocol.MAGIC).putInt(Protocol.VERSION_2).flip();
+                while (hello.hasRemaining()) {
+                    channel.write(hello);
+                }
+                this.replyBuffer = ByteBuffer.allocate(Protocol.HELLO_REPLY_LENGTH);
+            } else {
+                new Thread(() -> writer()).start();
+            }
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
     }
 
     public static void main(String[] args) {
-        if (args.length != 3){
-            System.out.println("USAGE: java cs455.scaling.client.Client [Server Host] [Server Port] [Message Rate]");
+        if (args.length < 3 || args.length > 6){
+            System.out.println("USAGE: java cs455.scaling.client.Client [Server Host] [Server Port] [Message Rate] [Max Outstanding (optional)]"
+                    + " [Protocol Version (optional)] [Corpus File (optional)]");
         } else {
-            Client client = new Client(args[0], Integer.parseInt(args[1]), Float.parseFloat(args[2]));
+            int maxOutstanding = args.length >= 4 ? Integer.parseInt(args[3]) : 0;
+            int protocol = args.length >= 5 ? Integer.parseInt(args[4]) : Protocol.VERSION_1;
+            Client client = new Client(args[0], Integer.parseInt(args[1]), Float.parseFloat(args[2]), maxOutstanding, protocol);
+            if (args.length == 6) {
+                try {
+                    client.setCorpus(Corpus.open(Paths.get(args[5])));
+                } catch (IOException e) {
+                    System.out.println("Could not open corpus: " + e.getMessage());
+                    return;
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Cannot replay corpus: " + e.getMessage());
+                    return;
+                }
+            }
             client.init();
         }
     }
 
-    private class HashList {
-
-        private LinkedList<String> list;
-
-        public HashList() {
-            this.list = new LinkedList<>();
-        }
-
-        public void add(String item) {
-            synchronized (this.list) {
-                //System.out.println("Adding " + item);
-                this.list.add(item);
-                this.list.notify();
-            }
+    private ByteBuffer negotiated(ByteBuffer hello) {
+        if (hello.getInt(0) != Protocol.MAGIC || hello.getInt(4) != Protocol.VERSION_2) {
+            refused("Unexpected reply to the version 2 hello");
         }
-
-        public String removeIfPresent(String item) {
-            String itemRemoved = null;
-            synchronized (this.list) {
-                if (list.contains(item)) {
-                    //System.out.println("Removing " + item);
-                    itemRemoved = list.get(list.indexOf(item));
-                    list.remove(item);
-                }
-            }
-            return itemRemoved;
+        this.negotiated = true;
+        this.resultLength = hello.getInt(Protocol.HELLO_LENGTH);
+        if (this.resultLength != Hashing.DIGEST_LENGTH) {
+            System.out.println("Server returns " + this.resultLength + " byte results; matching replies by id only");
         }
+        this.replyBuffer = ByteBuffer.allocate(Protocol.REPLY_HEADER_LENGTH + this.resultLength);
+        new Thread(() -> writer()).start();
+        return this.replyBuffer;
     }
 
-    private String SHA1FromBytes(byte[] data) {
+    // The writer only starts once the hello is answered, so there is
+    // nothing else to stop
+    private void refused(String reason) {
+        System.out.println(reason + "; the server does not support protocol version 2, use version 1");
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA1");
-            byte[] hash = digest.digest(data);
-            BigInteger hashInt = new BigInteger(1, hash);
-            String hashedString = hashInt.toString(16);
-            this.hashList.add(hashedString);
-            return hashedString;
-        } catch (Exception  e) {
+            this.channel.close();
+        } catch (IOException e) {
             System.out.println(e.getMessage());
-            return null;
+        }
+        System.exit(1);
+    }
+
+    private void writeFramed(byte[] digest) throws IOException {
+        long id = this.nextRequestId++;
+        this.pending.awaitRoom(id);
+        this.pending.add(id, digest, System.nanoTime());
+        this.header.clear();
+        this.header.putInt(buffer.remaining()).putLong(id).flip();
+        ByteBuffer[] frame = { this.header, this.buffer };
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(frame);
         }
     }
 
@@ -0,0 +1,134 @@
+package cs455.scaling.client;
+
+import cs455.scaling.Hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of fixed-size messages to replay, memory-mapped read-only, with a
+ * sidecar index (the corpus path plus ".idx") holding each message's
+ * precomputed SHA-1. Sending a message is then just a write from a slice
+ * of the mapping, and its expected reply is a lookup: the client neither
+ * generates nor hashes anything per message.
+ *
+ * Index layout: magic, message size, message count, then DIGEST_LENGTH
+ * bytes per message in corpus order.
+ */
+public class Corpus {
+
+    public static final int INDEX_MAGIC = 0x43494458;
+    public static final int INDEX_HEADER_LENGTH = 16;
+
+    private final int messageSize;
+    private final long count;
+    private final int perSegment;
+    private final MappedByteBuffer[] segments;
+    private final MappedByteBuffer index;
+
+    private Corpus(int messageSize, long count, MappedByteBuffer[] segments, MappedByteBuffer index) {
+        this.messageSize = messageSize;
+        this.count = count;
+        this.perSegment = Integer.MAX_VALUE / messageSize;
+        this.segments = segments;
+        this.index = index;
+    }
+
+    public static Path indexPath(Path corpus) {
+        return Paths.get(corpus.toString() + ".idx");
+    }
+
+    /**
+     * Maps a corpus and its index. The pages are loaded up front so the
+     * first pass over the corpus doesn't stall the sender on page faults.
+     */
+    public static Corpus open(Path corpus) throws IOException {
+        MappedByteBuffer index;
+        try (FileChannel channel = FileChannel.open(indexPath(corpus), StandardOpenOption.READ)) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (index.capacity() < INDEX_HEADER_LENGTH || index.getInt(0) != INDEX_MAGIC) {
+            throw new IOException("Not a corpus index: " + indexPath(corpus));
+        }
+        int messageSize = index.getInt(4);
+        long count = index.getLong(8);
+        if (count <= 0 || index.capacity() != INDEX_HEADER_LENGTH + count * Hashing.DIGEST_LENGTH) {
+            throw new IOException("Corpus index is truncated: " + indexPath(corpus));
+        }
+
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.READ)) {
+            if (channel.size() < count * messageSize) {
+                throw new IOException("Corpus is shorter than its index: " + corpus);
+            }
+            // A single mapping tops out at 2 GB, so larger corpora are split
+            // on message boundaries
+            long perSegment = Integer.MAX_VALUE / messageSize;
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((count + perSegment - 1) / perSegment)];
+            for (int i = 0; i < segments.length; i++) {
+                long first = i * perSegment;
+                long messages = Math.min(perSegment, count - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * messageSize, messages * messageSize);
+                segments[i].load();
+            }
+            return new Corpus(messageSize, count, segments, index);
+        }
+    }
+
+    public int getMessageSize() {
+        return messageSize;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * A cursor for one sender, starting at message `start` and wrapping
+     * round at the end. Senders should start far enough apart that no two
+     * have the same message outstanding at once.
+     */
+    public Cursor cursor(long start) {
+        return new Cursor(Math.floorMod(start, count));
+    }
+
+    /**
+     * Walks the corpus for a single thread. `next` returns a view over the
+     * next message, positioned for writing, and leaves its digest in
+     * `digest`; both are reused by the following call.
+     */
+    public class Cursor {
+
+        public final byte[] digest;
+        private final ByteBuffer[] views;
+        private long next;
+
+        private Cursor(long start) {
+            this.digest = new byte[Hashing.DIGEST_LENGTH];
+            this.views = new ByteBuffer[segments.length];
+            for (int i = 0; i < views.length; i++) {
+                views[i] = segments[i].duplicate();
+            }
+            this.next = start;
+        }
+
+        public ByteBuffer next() {
+            long i = next;
+            next = i + 1 == count ? 0 : i + 1;
+
+            int base = INDEX_HEADER_LENGTH + (int) (i * Hashing.DIGEST_LENGTH);
+            for (int b = 0; b < Hashing.DIGEST_LENGTH; b++) {
+                digest[b] = index.get(base + b);
+            }
+
+            ByteBuffer view = views[(int) (i / perSegment)];
+            int offset = (int) (i % perSegment) * messageSize;
+            view.limit(offset + messageSize).position(offset);
+            return view;
+        }
+    }
+}
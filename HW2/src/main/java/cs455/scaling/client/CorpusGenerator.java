@@ -0,0 +1,87 @@
+package cs455.scaling.client;
+
+import cs455.scaling.Hashing;
+import cs455.scaling.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Writes a corpus of random MESSAGE_SIZE messages and its index, or with
+ * "index" instead of a count, indexes an existing file (captured traffic,
+ * say) as consecutive MESSAGE_SIZE messages, ignoring any partial one at
+ * the end.
+ */
+public class CorpusGenerator {
+
+    public static void generate(Path corpus, long count, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] data = new byte[Protocol.MESSAGE_SIZE];
+        ByteBuffer message = ByteBuffer.wrap(data);
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long i = 0; i < count; i++) {
+                random.nextBytes(data);
+                message.clear();
+                while (message.hasRemaining()) {
+                    channel.write(message);
+                }
+            }
+        }
+        index(corpus, Protocol.MESSAGE_SIZE);
+    }
+
+    public static long index(Path corpus, int messageSize) throws IOException {
+        try (FileChannel in = FileChannel.open(corpus, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Corpus.indexPath(corpus), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long count = in.size() / messageSize;
+            ByteBuffer header = ByteBuffer.allocate(Corpus.INDEX_HEADER_LENGTH);
+            header.putInt(Corpus.INDEX_MAGIC).putInt(messageSize).putLong(count).flip();
+            write(out, header);
+
+            ByteBuffer message = ByteBuffer.allocateDirect(messageSize);
+            ByteBuffer digest = ByteBuffer.allocate(Hashing.DIGEST_LENGTH);
+            for (long i = 0; i < count; i++) {
+                message.clear();
+                while (message.hasRemaining()) {
+                    in.read(message);
+                }
+                message.flip();
+                digest.clear();
+                Hashing.sha1Raw(message, digest);
+                digest.flip();
+                write(out, digest);
+            }
+            return count;
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("USAGE: java cs455.scaling.client.CorpusGenerator [Corpus File] [Messages | index]"
+                    + " [Seed (optional)]");
+            System.exit(1);
+        }
+        Path corpus = Paths.get(args[0]);
+        if (args[1].equals("index")) {
+            long count = index(corpus, Protocol.MESSAGE_SIZE);
+            System.out.println("Indexed " + count + " messages in " + corpus);
+        } else {
+            long count = Long.parseLong(args[1]);
+            generate(corpus, count, args.length == 3 ? Long.parseLong(args[2]) : System.nanoTime());
+            System.out.println("Wrote " + count + " messages to " + corpus);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package cs455.scaling.client;
+
+import cs455.scaling.Hashing;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator. A few IO threads each drive a share of the
+ * connections from one selector. Every connection has a fixed schedule on
+ * System.nanoTime; a message's latency is measured from when it was
+ * scheduled to go out, not from when the socket accepted it, so a server
+ * that stalls the sender is charged for the whole delay (no coordinated
+ * omission).
+ */
+public class LoadGenerator {
+
+    public static final int MESSAGE_SIZE = 8192;
+
+    private String serverHost;
+    private int serverPort;
+    private int connections;
+    private double messageRate;
+    private IOThread[] threads;
+    private int reportInterval;
+    private Corpus corpus;
+
+    public LoadGenerator(String serverHost, int serverPort, int connections, double messageRate,
+                         int threadCount, int reportInterval) {
+        this.serverHost = serverHost;
+        this.serverPort = serverPort;
+        this.connections = connections;
+        this.messageRate = messageRate;
+        this.threads = new IOThread[threadCount];
+        this.reportInterval = reportInterval;
+    }
+
+    /**
+     * Replays `corpus` instead of sending random payloads; connections
+     * start evenly spaced through it. Call before init. Replies are matched
+     * per connection, but a connection whose outstanding messages wrap
+     * round the corpus can still match the wrong copy, so the corpus needs
+     * at least one message per connection and should hold many more.
+     */
+    public void setCorpus(Corpus corpus) {
+        if (corpus.getMessageSize() != MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Corpus messages must be " + MESSAGE_SIZE + " bytes");
+        }
+        if (corpus.getCount() < connections) {
+            throw new IllegalArgumentException("Corpus has " + corpus.getCount() + " messages for "
+                    + connections + " connections; it needs at least one per connection");
+        }
+        this.corpus = corpus;
+    }
+
+    public void init() throws IOException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / messageRate);
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new IOThread(i, interval);
+        }
+        InetSocketAddress address = new InetSocketAddress(serverHost, serverPort);
+        for (int i = 0; i < connections; i++) {
+            // Multiply first so the stride can't round down to 0
+            Corpus.Cursor cursor = corpus == null ? null : corpus.cursor(i * corpus.getCount() / connections);
+            threads[i % threads.length].open(address, i, cursor);
+        }
+        for (IOThread t : threads) {
+            t.start();
+        }
+        report();
+    }
+
+    private void report() {
+        long[] counts = LatencyHistogram.newCounts();
+        long lastSent = 0;
+        long lastReceived = 0;
+        long last = System.nanoTime();
+        while (true) {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(reportInterval));
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long sent = 0;
+            long received = 0;
+            long outstanding = 0;
+            long unmatched = 0;
+            int connected = 0;
+            Arrays.fill(counts, 0);
+            for (IOThread t : threads) {
+                t.histogram.drainInto(counts);
+                sent += t.sent.get();
+                received += t.received.get();
+                outstanding += t.hashes.size();
+                unmatched += t.hashes.getUnmatched();
+                connected += t.connected;
+            }
+
+            long now = System.nanoTime();
+            double seconds = (now - last) / 1e9;
+            System.out.println(String.format(
+                    "Connections: %d Sent: %.0f/s Received: %.0f/s Outstanding: %d Unmatched: %d",
+                    connected, (sent - lastSent) / seconds, (received - lastReceived) / seconds,
+                    outstanding, unmatched));
+            System.out.println(String.format(
+                    "Latency (ms) p50: %.3f p99: %.3f p999: %.3f max: %.3f",
+                    LatencyHistogram.percentile(counts, 50) / 1e6,
+                    LatencyHistogram.percentile(counts, 99) / 1e6,
+                    LatencyHistogram.percentile(counts, 99.9) / 1e6,
+                    LatencyHistogram.max(counts) / 1e6));
+            lastSent = sent;
+            lastReceived = received;
+            last = now;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5 || args.length > 7) {
+            System.out.println("USAGE: java cs455.scaling.client.LoadGenerator [Server Host] [Server Port] "
+                    + "[Connections] [Message Rate per Connection] [IO Threads] [Report Interval (optional)]"
+                    + " [Corpus File (optional)]");
+            System.exit(1);
+        }
+        int interval = args.length >= 6 ? Integer.parseInt(args[5]) : 5;
+        LoadGenerator generator = new LoadGenerator(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Double.parseDouble(args[3]), Integer.parseInt(args[4]), interval);
+        if (args.length == 7) {
+            generator.setCorpus(Corpus.open(Paths.get(args[6])));
+        }
+        generator.init();
+    }
+
+    private static class Conn {
+        final long id;
+        final SocketChannel channel;
+        final Corpus.Cursor cursor;
+        ByteBuffer payload;
+        final ByteBuffer reply;
+        long seq;
+        long nextSendAt;
+        boolean writing;
+        boolean connected;
+        SelectionKey key;
+
+        Conn(SocketChannel channel, long seed, Corpus.Cursor cursor) {
+            this.id = seed;
+            this.channel = channel;
+            this.cursor = cursor;
+            if (cursor == null) {
+                byte[] data = new byte[MESSAGE_SIZE];
+                new Random(seed).nextBytes(data);
+                this.payload = ByteBuffer.wrap(data);
+            }
+            this.reply = ByteBuffer.allocate(Hashing.HEX_LENGTH);
+        }
+    }
+
+    private static class IOThread extends Thread {
+
+        final Selector selector;
+        final long interval;
+        final PriorityQueue<Conn> schedule;
+        final OutstandingHashes hashes;
+        final LatencyHistogram histogram;
+        final AtomicLong sent;
+        final AtomicLong received;
+        final byte[] replyDigest;
+        final Random jitter;
+        volatile int connected;
+
+        IOThread(int index, long interval) throws IOException {
+            super("Load-" + index);
+            setDaemon(true);
+            this.selector = Selector.open();
+            this.interval = interval;
+            this.schedule = new PriorityQueue<>((a, b) -> Long.compare(a.nextSendAt, b.nextSendAt));
+            this.hashes = new OutstandingHashes();
+            this.histogram = new LatencyHistogram();
+            this.sent = new AtomicLong();
+            this.received = new AtomicLong();
+            this.replyDigest = new byte[Hashing.DIGEST_LENGTH];
+            this.jitter = new Random(index);
+        }
+
+        // Called before the thread starts
+        void open(InetSocketAddress address, long seed, Corpus.Cursor cursor) throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            Conn conn = new Conn(channel, seed, cursor);
+            conn.key = channel.register(selector, SelectionKey.OP_CONNECT, conn);
+            channel.connect(address);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    sendDue(now);
+
+                    Conn head = schedule.peek();
+                    long wait = head == null ? 0 : head.nextSendAt - System.nanoTime();
+                    if (head != null && wait < TimeUnit.MILLISECONDS.toNanos(1)) {
+                        // select can't wait less than a millisecond; take
+                        // what's ready, then sleep off the rest rather than
+                        // spin on selectNow
+                        if (selector.selectNow() == 0 && wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else {
+                        selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Conn conn = (Conn) key.attachment();
+                        try {
+                            if (key.isConnectable()) {
+                                connect(conn);
+                                continue;
+                            }
+                            if (key.isWritable()) {
+                                write(conn);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(conn);
+                            }
+                        } catch (IOException e) {
+                            System.out.println("[" + getName() + "] Connection failed: " + e.getMessage());
+                            close(conn);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("[" + getName() + "] Selector failed: " + e.getMessage());
+            }
+        }
+
+        private void connect(Conn conn) throws IOException {
+            conn.channel.finishConnect();
+            conn.key.interestOps(SelectionKey.OP_READ);
+            // Spread first sends over one interval so connections don't fire in lockstep
+            conn.nextSendAt = System.nanoTime() + (long) (jitter.nextDouble() * interval);
+            schedule.add(conn);
+            conn.connected = true;
+            connected++;
+        }
+
+        // Stops scheduling the connection and takes it out of the count
+        private void close(Conn conn) throws IOException {
+            conn.key.cancel();
+            conn.channel.close();
+            schedule.remove(conn);
+            if (conn.connected) {
+                conn.connected = false;
+                connected--;
+            }
+        }
+
+        private void sendDue(long now) throws IOException {
+            Conn conn;
+            while ((conn = schedule.peek()) != null && conn.nextSendAt <= now) {
+                schedule.poll();
+                if (conn.cursor != null) {
+                    conn.payload = conn.cursor.next();
+                    hashes.add(conn.id, conn.cursor.digest, conn.nextSendAt);
+                } else {
+                    ByteBuffer payload = conn.payload;
+                    payload.clear();
+                    payload.putLong(0, conn.seq++);
+                    hashes.add(conn.id, Hashing.sha1(payload), conn.nextSendAt);
+                    payload.clear();
+                }
+                conn.nextSendAt += interval;
+                conn.writing = true;
+                try {
+                    write(conn);
+                } catch (IOException e) {
+                    System.out.println("[" + getName() + "] Send failed: " + e.getMessage());
+                    close(conn);
+                }
+            }
+        }
+
+        private void write(Conn conn) throws IOException {
+            conn.channel.write(conn.payload);
+            if (conn.payload.hasRemaining()) {
+                conn.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            if (conn.writing) {
+                conn.writing = false;
+                sent.lazySet(sent.get() + 1);
+                conn.key.interestOps(SelectionKey.OP_READ);
+                // A connection that fell behind stays due and goes again at once
+                schedule.add(conn);
+            }
+        }
+
+        private void read(Conn conn) throws IOException {
+            ByteBuffer reply = conn.reply;
+            int read;
+            while ((read = conn.channel.read(reply)) > 0) {
+                if (reply.hasRemaining()) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                Hashing.fromHex(reply.array(), 0, replyDigest);
+                long sentAt = hashes.remove(conn.id, replyDigest);
+                if (sentAt >= 0) {
+                    histogram.record(now - sentAt);
+                }
+                received.lazySet(received.get() + 1);
+                reply.clear();
+            }
+            if (read < 0) {
+                throw new IOException("Server closed connection");
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package cs455.scaling.client;
+
+import cs455.scaling.Hashing;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Digests sent to the server that have not been answered yet, keyed by
+ * the connection they went out on and their 20 raw bytes, so adding and
+ * matching a reply are both O(1). Keying by connection keeps senders that
+ * replay the same payloads from matching each other's replies. Copies of
+ * one payload outstanding on one connection are chained under their key
+ * in send order, and each reply answers the oldest.
+ *
+ * With a bound > 0, the oldest outstanding entries are evicted once more
+ * than `bound` are waiting, and counted as stale; a server that has fallen
+ * that far behind is not going to be matched usefully anyway.
+ */
+public class OutstandingHashes {
+
+    private final int bound;
+    private final ConcurrentHashMap<Entry, Entry> map;
+    private final ConcurrentLinkedQueue<Entry> order;
+    private final AtomicInteger count;
+    private final AtomicLong evicted;
+    private final AtomicLong unmatched;
+
+    public OutstandingHashes() {
+        this(0);
+    }
+
+    public OutstandingHashes(int bound) {
+        this.bound = bound;
+        this.map = new ConcurrentHashMap<>();
+        this.order = bound > 0 ? new ConcurrentLinkedQueue<>() : null;
+        this.count = new AtomicInteger();
+        this.evicted = new AtomicLong();
+        this.unmatched = new AtomicLong();
+    }
+
+    /**
+     * Records a digest as outstanding. The digest is copied, so the
+     * caller may reuse the array.
+     */
+    public void add(byte[] digest, long sentAt) {
+        add(0, digest, sentAt);
+    }
+
+    public void add(long connection, byte[] digest, long sentAt) {
+        Entry entry = new Entry(connection, Arrays.copyOf(digest, Hashing.DIGEST_LENGTH), sentAt);
+        map.merge(entry, entry, (head, added) -> {
+            Entry tail = head;
+            while (tail.next != null) {
+                tail = tail.next;
+            }
+            tail.next = added;
+            return head;
+        });
+        count.incrementAndGet();
+        if (order == null) {
+            return;
+        }
+
+        order.add(entry);
+        while (count.get() > bound) {
+            Entry oldest = order.poll();
+            if (oldest == null) {
+                break;
+            }
+            // The oldest entry still outstanding is the head of its chain
+            boolean[] taken = new boolean[1];
+            map.computeIfPresent(oldest, (key, head) -> {
+                if (head != oldest) {
+                    return head;
+                }
+                head.done = true;
+                taken[0] = true;
+                return head.next;
+            });
+            if (taken[0]) {
+                count.decrementAndGet();
+                evicted.incrementAndGet();
+            }
+        }
+        // Replies mostly come back in send order, so answered entries pile
+        // up at the head; drop them to keep the queue near the map's size.
+        Entry head;
+        while ((head = order.peek()) != null && head.done) {
+            order.remove(head);
+        }
+    }
+
+    /**
+     * Removes the digest if it is outstanding and returns when it was
+     * sent, or -1 if it was never sent, already answered, or evicted.
+     */
+    public long remove(byte[] digest) {
+        return remove(0, digest);
+    }
+
+    public long remove(long connection, byte[] digest) {
+        Entry[] removed = new Entry[1];
+        map.computeIfPresent(new Entry(connection, digest, 0), (key, head) -> {
+            head.done = true;
+            removed[0] = head;
+            return head.next;
+        });
+        if (removed[0] == null) {
+            unmatched.incrementAndGet();
+            return -1;
+        }
+        count.decrementAndGet();
+        return removed[0].sentAt;
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    public long getUnmatched() {
+        return unmatched.get();
+    }
+
+    private static class Entry {
+        final long connection;
+        final byte[] digest;
+        final long sentAt;
+        final int hash;
+        volatile boolean done;
+        // Later copies with the same key; only changed inside the map's
+        // merge and compute for that key
+        Entry next;
+
+        Entry(long connection, byte[] digest, long sentAt) {
+            this.connection = connection;
+            this.digest = digest;
+            this.sentAt = sentAt;
+            // SHA-1 output is already uniform; the first four bytes will do
+            this.hash = ((digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16
+                    | (digest[2] & 0xff) << 8 | (digest[3] & 0xff)) ^ Long.hashCode(connection);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && connection == ((Entry) o).connection
+                    && Arrays.equals(digest, ((Entry) o).digest);
+        }
+    }
+}
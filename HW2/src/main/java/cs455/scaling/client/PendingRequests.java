@@ -0,0 +1,130 @@
+package cs455.scaling.client;
+
+import cs455.scaling.Hashing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Expected digests of version 2 requests still in flight, indexed by
+ * request id modulo a power-of-two window, so matching a reply is one
+ * array lookup. The sender waits in awaitRoom until a request's slot is
+ * free; one added without waiting over a request still unanswered
+ * overwrites it, and that request is counted as stale.
+ *
+ * One thread adds and one thread matches; the slot's id is published
+ * after its digest, so the matcher never sees a half-written slot.
+ */
+public class PendingRequests {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int mask;
+    private final AtomicLongArray ids;
+    private final long[] sentAt;
+    private final byte[][] digests;
+    private final AtomicLong stale;
+    private final AtomicLong mismatched;
+    private final AtomicLong unmatched;
+    private final AtomicInteger inFlight;
+    private volatile Thread waiter;
+
+    public PendingRequests(int window) {
+        int size = Integer.highestOneBit(Math.max(1, window - 1)) << 1;
+        this.mask = size - 1;
+        this.ids = new AtomicLongArray(size);
+        this.sentAt = new long[size];
+        this.digests = new byte[size][Hashing.DIGEST_LENGTH];
+        this.stale = new AtomicLong();
+        this.mismatched = new AtomicLong();
+        this.unmatched = new AtomicLong();
+        this.inFlight = new AtomicInteger();
+        for (int i = 0; i < size; i++) {
+            ids.set(i, EMPTY);
+        }
+    }
+
+    public void add(long requestId, byte[] digest, long time) {
+        int slot = (int) requestId & mask;
+        if (ids.getAndSet(slot, EMPTY) != EMPTY) {
+            stale.incrementAndGet();
+        } else {
+            inFlight.incrementAndGet();
+        }
+        System.arraycopy(digest, 0, digests[slot], 0, Hashing.DIGEST_LENGTH);
+        sentAt[slot] = time;
+        ids.set(slot, requestId);
+    }
+
+    /**
+     * Matches a reply. Returns when the request was sent, or -1 if the id
+     * is not in flight or the digest is wrong. A null `digest` matches on
+     * the id alone, for results that aren't SHA-1 digests.
+     */
+    public long remove(long requestId, byte[] digest, int offset) {
+        int slot = (int) requestId & mask;
+        if (ids.get(slot) != requestId) {
+            unmatched.incrementAndGet();
+            return -1;
+        }
+        long time = sentAt[slot];
+        byte[] expected = digests[slot];
+        boolean equal = true;
+        for (int i = 0; digest != null && i < Hashing.DIGEST_LENGTH; i++) {
+            equal &= expected[i] == digest[offset + i];
+        }
+        if (!ids.compareAndSet(slot, requestId, EMPTY)) {
+            unmatched.incrementAndGet();
+            return -1;
+        }
+        inFlight.decrementAndGet();
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        if (!equal) {
+            mismatched.incrementAndGet();
+            return -1;
+        }
+        return time;
+    }
+
+    /**
+     * Blocks the sending thread until `requestId` can be added without
+     * overwriting a request still in flight, that is until the request a
+     * window earlier has been answered.
+     */
+    public void awaitRoom(long requestId) {
+        int slot = (int) requestId & mask;
+        while (ids.get(slot) != EMPTY) {
+            waiter = Thread.currentThread();
+            // Re-check once visible, and don't rely on the unpark alone
+            if (ids.get(slot) != EMPTY) {
+                LockSupport.parkNanos(this, 10 * 1000 * 1000);
+            }
+            waiter = null;
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getWindow() {
+        return mask + 1;
+    }
+
+    public long getStale() {
+        return stale.get();
+    }
+
+    public long getMismatched() {
+        return mismatched.get();
+    }
+
+    public long getUnmatched() {
+        return unmatched.get();
+    }
+}
@@ -0,0 +1,33 @@
+package cs455.scaling.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Messages processed for one client. The reactor increments it; the
+ * reporter only ever reads the sum, so the two never contend.
+ */
+public class ConnectionStats {
+
+    private final LongAdder messages;
+    private ThroughputWindow window;
+
+    public ConnectionStats() {
+        this.messages = new LongAdder();
+    }
+
+    public void increment() {
+        messages.increment();
+    }
+
+    public long getTotal() {
+        return messages.sum();
+    }
+
+    ThroughputWindow getWindow() {
+        return window;
+    }
+
+    void setWindow(ThroughputWindow window) {
+        this.window = window;
+    }
+}
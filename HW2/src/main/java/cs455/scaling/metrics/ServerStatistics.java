@@ -0,0 +1,104 @@
+package cs455.scaling.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks per-connection message counts and reports, over a sliding
+ * window, the server's throughput and the mean and standard deviation of
+ * per-client throughput. `sample` and `summary` run on the reporting
+ * thread; everything else is safe from the hot path.
+ */
+public class ServerStatistics {
+
+    private final int slots;
+    private final Set<ConnectionStats> connections;
+    private final LongAdder departed;
+    private ThroughputWindow server;
+
+    public ServerStatistics(int slots) {
+        this.slots = slots;
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.departed = new LongAdder();
+    }
+
+    public ConnectionStats register() {
+        ConnectionStats stats = new ConnectionStats();
+        connections.add(stats);
+        return stats;
+    }
+
+    public void unregister(ConnectionStats stats) {
+        if (connections.remove(stats)) {
+            departed.add(stats.getTotal());
+        }
+    }
+
+    public int getActiveConnections() {
+        return connections.size();
+    }
+
+    public void sample() {
+        long now = System.nanoTime();
+        long total = departed.sum();
+        for (ConnectionStats stats : connections) {
+            long messages = stats.getTotal();
+            total += messages;
+            if (stats.getWindow() == null) {
+                stats.setWindow(new ThroughputWindow(slots, 0, now));
+            }
+            stats.getWindow().sample(messages, now);
+        }
+        if (server == null) {
+            server = new ThroughputWindow(slots, total, now);
+        } else {
+            server.sample(total, now);
+        }
+    }
+
+    public String summary() {
+        int n = 0;
+        double sum = 0;
+        double sumSquares = 0;
+        for (ConnectionStats stats : connections) {
+            if (stats.getWindow() == null) {
+                continue;
+            }
+            double rate = stats.getWindow().rate();
+            n++;
+            sum += rate;
+            sumSquares += rate * rate;
+        }
+        double mean = n == 0 ? 0 : sum / n;
+        double stdDev = n == 0 ? 0 : Math.sqrt(Math.max(0, sumSquares / n - mean * mean));
+        double throughput = server == null ? 0 : server.rate();
+        return String.format("Server Throughput: %.2f messages/s, Active Client Connections: %d, "
+                + "Mean Per-client Throughput: %.2f messages/s, Std. Dev. Of Per-client Throughput: %.2f messages/s",
+                throughput, connections.size(), mean, stdDev);
+    }
+
+    /**
+     * Samples every `sampleMillis` and prints a summary every
+     * `reportMillis`, forever. Meant to run on its own thread.
+     */
+    public void report(long sampleMillis, long reportMillis, Runnable extra) {
+        long nextReport = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reportMillis);
+        while (true) {
+            try {
+                Thread.sleep(sampleMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sample();
+            if (System.nanoTime() - nextReport >= 0) {
+                System.out.println(summary());
+                if (extra != null) {
+                    extra.run();
+                }
+                nextReport += TimeUnit.MILLISECONDS.toNanos(reportMillis);
+            }
+        }
+    }
+}
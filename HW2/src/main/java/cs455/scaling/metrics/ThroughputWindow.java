@@ -0,0 +1,42 @@
+package cs455.scaling.metrics;
+
+/**
+ * Sliding window over the last `slots` samples of a monotonically growing
+ * total. Only the reporting thread calls into it.
+ */
+public class ThroughputWindow {
+
+    private long[] counts;
+    private long[] nanos;
+    private int next;
+    private long lastTotal;
+    private long lastTime;
+
+    public ThroughputWindow(int slots, long total, long now) {
+        this.counts = new long[slots];
+        this.nanos = new long[slots];
+        this.lastTotal = total;
+        this.lastTime = now;
+    }
+
+    public void sample(long total, long now) {
+        counts[next] = total - lastTotal;
+        nanos[next] = now - lastTime;
+        next = (next + 1) % counts.length;
+        lastTotal = total;
+        lastTime = now;
+    }
+
+    /**
+     * Events per second over the window, or 0 before the first sample.
+     */
+    public double rate() {
+        long count = 0;
+        long time = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            time += nanos[i];
+        }
+        return time == 0 ? 0 : count * 1e9 / time;
+    }
+}
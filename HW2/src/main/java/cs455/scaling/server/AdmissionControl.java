@@ -0,0 +1,105 @@
+package cs455.scaling.server;
+
+import cs455.scaling.task.TaskPool;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watermarks on the task pool's queue depth. Once the depth reaches the
+ * high mark, connections with more than their fair share of queued tasks
+ * stop being read; at twice the high mark every connection stops. When
+ * workers bring the depth back to the low mark, every reactor re-enables
+ * reads on the connections it paused. Unread bytes stay in the socket, so
+ * overload turns into TCP backpressure on the clients instead of heap.
+ */
+public class AdmissionControl {
+
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final TaskPool pool;
+    private final AtomicBoolean overloaded;
+    private final AtomicInteger paused;
+    private volatile Reactor[] reactors;
+
+    public AdmissionControl(TaskPool pool, int highWatermark, int lowWatermark) {
+        this.pool = pool;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.overloaded = new AtomicBoolean();
+        this.paused = new AtomicInteger();
+        pool.onDrained(lowWatermark, this::drained);
+    }
+
+    void setReactors(Reactor[] reactors) {
+        this.reactors = reactors;
+    }
+
+    /**
+     * Whether the connection should stop being read before its next
+     * message is taken off the socket.
+     */
+    boolean shouldPause(Connection conn, int activeConnections) {
+        int depth = pool.getQueueDepth();
+        if (depth < highWatermark) {
+            return false;
+        }
+        if (depth >= 2 * highWatermark) {
+            return true;
+        }
+        int share = Math.max(1, depth / Math.max(1, activeConnections));
+        return conn.getInFlight() >= share;
+    }
+
+    /**
+     * Called by a reactor after it paused a connection. Arms the resume,
+     * then re-checks in case the workers drained the queue in between.
+     */
+    void paused() {
+        paused.incrementAndGet();
+        overloaded.set(true);
+        drained();
+    }
+
+    /**
+     * Called by a reactor after it paused a connection for some other
+     * reason, such as an empty buffer pool. Counted, but doesn't arm the
+     * resume.
+     */
+    void held() {
+        paused.incrementAndGet();
+    }
+
+    void resumed(int count) {
+        paused.addAndGet(-count);
+    }
+
+    // Runs on a worker after nearly every task, so it only reads the flag
+    // until there is a pause to undo
+    private void drained() {
+        if (overloaded.get() && pool.getQueueDepth() <= lowWatermark
+                && overloaded.compareAndSet(true, false)) {
+            for (Reactor reactor : reactors) {
+                reactor.requestResume();
+            }
+        }
+    }
+
+    boolean isOverloaded() {
+        return overloaded.get();
+    }
+
+    public int getQueueDepth() {
+        return pool.getQueueDepth();
+    }
+
+    public int getPausedConnections() {
+        return paused.get();
+    }
+
+    @Override
+    public String toString() {
+        return "depth=" + getQueueDepth() + " paused=" + getPausedConnections()
+                + " watermarks=" + lowWatermark + "/" + highWatermark;
+    }
+}
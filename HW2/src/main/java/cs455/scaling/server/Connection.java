@@ -0,0 +1,288 @@
+package cs455.scaling.server;
+
+import cs455.scaling.BufferPool;
+import cs455.scaling.Hashing;
+import cs455.scaling.Protocol;
+import cs455.scaling.metrics.ConnectionStats;
+import cs455.scaling.task.FairScheduler;
+import cs455.scaling.task.Task;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-connection state, attached to the channel's SelectionKey. Only the
+ * reactor that owns the key touches the inbound buffer and the gather
+ * array; workers only append to the outbound queue through `send`.
+ */
+public class Connection {
+
+    public static final int MAX_GATHER = 64;
+
+    private Reactor reactor;
+    private BufferPool pool;
+    private ConnectionStats stats;
+    private FairScheduler.Flow flow;
+
+    // Partially filled message; handed to a Task once it is full
+    private ByteBuffer inbound;
+
+    // Negotiated protocol, and for version 2 the current frame's header
+    private int protocol;
+    private ByteBuffer header;
+    private long requestId;
+
+    // Replies waiting for OP_WRITE, and the batch currently being written
+    private ConcurrentLinkedQueue<ByteBuffer> outbound;
+    private AtomicBoolean writeScheduled;
+    private ByteBuffer[] gather;
+    private int gathered;
+    private volatile boolean closed;
+
+    // Tasks handed to the pool whose reply has not been queued yet
+    private AtomicInteger inFlight;
+
+    // Idle tracking; reactor thread only. The wheel fields belong to the
+    // reactor's TimingWheel, with wheelTick -1 while unscheduled.
+    private long id;
+    private SelectionKey key;
+    private long lastActivity;
+    Connection wheelPrev;
+    Connection wheelNext;
+    long wheelTick = -1;
+
+    public Connection(Reactor reactor, BufferPool pool, ConnectionStats stats) {
+        this.reactor = reactor;
+        this.pool = pool;
+        this.stats = stats;
+        this.outbound = new ConcurrentLinkedQueue<>();
+        this.writeScheduled = new AtomicBoolean();
+        this.gather = new ByteBuffer[MAX_GATHER];
+        this.inFlight = new AtomicInteger();
+    }
+
+    public Reactor getReactor() {
+        return reactor;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    void touch(long now) {
+        this.lastActivity = now;
+    }
+
+    public BufferPool getBufferPool() {
+        return pool;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    void submitted() {
+        inFlight.incrementAndGet();
+    }
+
+    public ConnectionStats getStats() {
+        return stats;
+    }
+
+    // Null unless the pool schedules by deficit round robin
+    public FairScheduler.Flow getFlow() {
+        return flow;
+    }
+
+    void setFlow(FairScheduler.Flow flow) {
+        this.flow = flow;
+    }
+
+    public ByteBuffer getInbound() {
+        return inbound;
+    }
+
+    /**
+     * Sets an empty buffer to read the next message into.
+     */
+    public void setInbound(ByteBuffer inbound) {
+        if (inbound != null && protocol == Protocol.UNKNOWN) {
+            inbound.limit(Protocol.HELLO_LENGTH);
+        }
+        this.inbound = inbound;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Reads into the inbound buffer and returns it, holding the message
+     * up to its position, once a whole message is there; returns null
+     * when more bytes are needed. The first HELLO_LENGTH
+     * bytes of a connection decide its protocol: a version 2 hello is
+     * answered with the same hello and the result length, and consumed;
+     * anything else is the start of a version 1 message.
+     */
+    ByteBuffer readMessage(SelectionKey key, SocketChannel channel) throws IOException {
+        ByteBuffer buffer = inbound;
+        if (protocol == Protocol.VERSION_2 && buffer.position() == 0 && header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                throw new EOFException();
+            }
+            if (header.hasRemaining()) {
+                return null;
+            }
+            int length = header.getInt(0);
+            if (length <= 0 || length > buffer.capacity()) {
+                throw new IOException("Bad frame length " + length);
+            }
+            requestId = header.getLong(4);
+            buffer.limit(length);
+        }
+
+        if (channel.read(buffer) < 0) {
+            throw new EOFException();
+        }
+        if (buffer.hasRemaining()) {
+            return null;
+        }
+
+        if (protocol == Protocol.UNKNOWN) {
+            negotiate(key, buffer);
+            return null;
+        }
+        inbound = null;
+        if (header != null) {
+            header.clear();
+        }
+        return buffer;
+    }
+
+    private void negotiate(SelectionKey key, ByteBuffer hello) throws IOException {
+        int resultLength = Task.getRequestHandler().getResultLength();
+        if (hello.getInt(0) == Protocol.MAGIC && hello.getInt(4) == Protocol.VERSION_2) {
+            protocol = Protocol.VERSION_2;
+            header = ByteBuffer.allocate(Protocol.FRAME_HEADER_LENGTH);
+            // Echo the hello back from the same buffer
+            hello.limit(Protocol.HELLO_REPLY_LENGTH);
+            hello.putInt(resultLength);
+            hello.flip();
+            inbound = null;
+            queue(key, hello);
+        } else {
+            if (resultLength != Hashing.DIGEST_LENGTH) {
+                System.out.println("Refusing version 1 client: results are " + resultLength + " bytes");
+                throw new IOException("Version 1 clients need a " + Hashing.DIGEST_LENGTH
+                        + " byte result, not " + resultLength);
+            }
+            protocol = Protocol.VERSION_1;
+            hello.limit(hello.capacity());
+        }
+    }
+
+    /**
+     * Queues a reply and makes sure the owning reactor is watching for
+     * OP_WRITE. Never touches the socket, so it is safe from any worker.
+     * Ownership of the buffer passes to the connection, which returns it
+     * to the pool once it has been written.
+     */
+    public void send(SelectionKey key, ByteBuffer reply) {
+        inFlight.decrementAndGet();
+        queue(key, reply);
+    }
+
+    private void queue(SelectionKey key, ByteBuffer reply) {
+        outbound.add(reply);
+        if (closed) {
+            drain();
+            return;
+        }
+        if (writeScheduled.compareAndSet(false, true)) {
+            reactor.requestWrite(key);
+        }
+    }
+
+    /**
+     * Called by the reactor when OP_WRITE fires. Gathers up to MAX_GATHER
+     * queued replies into one write. Returns true while there is still
+     * something left to write.
+     */
+    boolean flush(SocketChannel channel) throws IOException {
+        ByteBuffer b;
+        while (gathered < gather.length && (b = outbound.poll()) != null) {
+            gather[gathered++] = b;
+        }
+        if (gathered > 0) {
+            channel.write(gather, 0, gathered);
+        }
+
+        int done = 0;
+        while (done < gathered && !gather[done].hasRemaining()) {
+            pool.release(gather[done]);
+            done++;
+        }
+        if (done > 0) {
+            System.arraycopy(gather, done, gather, 0, gathered - done);
+            for (int i = gathered - done; i < gathered; i++) {
+                gather[i] = null;
+            }
+            gathered -= done;
+        }
+
+        if (gathered > 0) {
+            return true;
+        }
+        writeScheduled.set(false);
+        // A reply queued after the poll above saw an empty queue but a
+        // still-set flag, so it is up to us to keep OP_WRITE on for it.
+        return !outbound.isEmpty() && writeScheduled.compareAndSet(false, true);
+    }
+
+    void close() {
+        closed = true;
+        if (inbound != null) {
+            pool.release(inbound);
+            inbound = null;
+        }
+        for (int i = 0; i < gathered; i++) {
+            pool.release(gather[i]);
+            gather[i] = null;
+        }
+        gathered = 0;
+        drain();
+    }
+
+    private void drain() {
+        ByteBuffer b;
+        while ((b = outbound.poll()) != null) {
+            pool.release(b);
+        }
+    }
+}
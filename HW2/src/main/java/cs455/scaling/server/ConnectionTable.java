@@ -0,0 +1,74 @@
+package cs455.scaling.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Every open connection by id, with counts of how connections came and
+ * went. A connection is in the table from registration until its key is
+ * cancelled and its channel closed, so `size` staying flat under client
+ * churn is the check that nothing leaks.
+ */
+public class ConnectionTable {
+
+    private final ConcurrentHashMap<Long, Connection> open;
+    private final AtomicLong nextId;
+    private final LongAdder opened;
+    private final LongAdder closed;
+    private final LongAdder reaped;
+
+    public ConnectionTable() {
+        this.open = new ConcurrentHashMap<>();
+        this.nextId = new AtomicLong();
+        this.opened = new LongAdder();
+        this.closed = new LongAdder();
+        this.reaped = new LongAdder();
+    }
+
+    void add(Connection conn) {
+        conn.setId(nextId.incrementAndGet());
+        open.put(conn.getId(), conn);
+        opened.increment();
+    }
+
+    /**
+     * Returns false if the connection was already removed.
+     */
+    boolean remove(Connection conn) {
+        if (open.remove(conn.getId(), conn)) {
+            closed.increment();
+            return true;
+        }
+        return false;
+    }
+
+    void reaped() {
+        reaped.increment();
+    }
+
+    public Connection get(long id) {
+        return open.get(id);
+    }
+
+    public int size() {
+        return open.size();
+    }
+
+    public long getOpened() {
+        return opened.sum();
+    }
+
+    public long getClosed() {
+        return closed.sum();
+    }
+
+    public long getReaped() {
+        return reaped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "open=" + size() + " opened=" + getOpened() + " closed=" + getClosed() + " idle=" + getReaped();
+    }
+}
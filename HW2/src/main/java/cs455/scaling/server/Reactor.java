@@ -0,0 +1,259 @@
+package cs455.scaling.server;
+
+import cs455.scaling.BufferPool;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One selector loop. The acceptor reactor owns the listening channel;
+ * reader reactors are handed accepted channels through `assign` and own
+ * every read for those channels from then on. In single-selector mode the
+ * same reactor does both.
+ */
+public class Reactor implements Runnable {
+
+    private Server server;
+    private Selector selector;
+    private ConcurrentLinkedQueue<SocketChannel> pending;
+    private ConcurrentLinkedQueue<SelectionKey> writeRequests;
+    private AdmissionControl admission;
+    private BufferPool buffers;
+    private Set<SelectionKey> paused;
+    private volatile boolean resumeRequested;
+    private boolean awaitingBuffer;
+    private AtomicBoolean bufferWaiter;
+    private long idleTimeout;
+    private TimingWheel wheel;
+    private long now;
+
+    /**
+     * Connections with no reads or writes for `idleTimeoutMillis`, and no
+     * work in flight, are closed; 0 keeps them open forever.
+     */
+    public Reactor(Server server, AdmissionControl admission, BufferPool buffers, long idleTimeoutMillis) throws IOException {
+        this.server = server;
+        this.admission = admission;
+        this.buffers = buffers;
+        this.now = millis();
+        if (idleTimeoutMillis > 0) {
+            this.idleTimeout = idleTimeoutMillis;
+            // About a tenth of the timeout per tick, and one lap covering it
+            long tick = Math.max(10, idleTimeoutMillis / 10);
+            this.wheel = new TimingWheel(tick, (int) Math.min(1024, idleTimeoutMillis / tick + 1), now);
+        }
+        this.paused = new HashSet<>();
+        this.bufferWaiter = new AtomicBoolean();
+        this.selector = Selector.open();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.writeRequests = new ConcurrentLinkedQueue<>();
+    }
+
+    public void listen(ServerSocketChannel channel) throws IOException {
+        channel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void assign(SocketChannel channel) {
+        pending.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Asks the loop to add OP_WRITE to the key's interest set. Interest
+     * changes are made on the reactor thread so workers never wait on the
+     * selector.
+     */
+    public void requestWrite(SelectionKey key) {
+        writeRequests.add(key);
+        selector.wakeup();
+    }
+
+    /**
+     * Asks the loop to resume reading the connections it paused. Safe to
+     * call from any thread; the interest sets are only changed by the loop.
+     */
+    public void requestResume() {
+        resumeRequested = true;
+        selector.wakeup();
+    }
+
+    // Reactor thread only
+    void pauseReads(SelectionKey key) {
+        if (pause(key)) {
+            admission.paused();
+        }
+    }
+
+    /**
+     * Reactor thread only. The buffer pool is empty, so the connection
+     * stops being read until a task releases one. The release only wakes
+     * this loop; reads are re-enabled here, not on the releasing thread.
+     */
+    void pauseForBuffer(SelectionKey key) {
+        if (pause(key)) {
+            admission.held();
+        }
+        awaitingBuffer = true;
+        waitForBuffer();
+    }
+
+    // At most one waiter on the pool per reactor
+    private void waitForBuffer() {
+        if (bufferWaiter.compareAndSet(false, true)) {
+            buffers.onAvailable(() -> {
+                bufferWaiter.set(false);
+                requestResume();
+            });
+        }
+    }
+
+    private boolean pause(SelectionKey key) {
+        if (!paused.add(key)) {
+            return false;
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        return true;
+    }
+
+    // Reactor thread only
+    void forget(SelectionKey key) {
+        if (paused.remove(key)) {
+            admission.resumed(1);
+        }
+        if (wheel != null) {
+            wheel.cancel((Connection) key.attachment());
+        }
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                if (wheel != null && wheel.size() > 0) {
+                    selector.select(wheel.getTickMillis());
+                } else {
+                    selector.select();
+                }
+                now = millis();
+                registerPending();
+                enableWrites();
+                if (resumeRequested) {
+                    resumeReads();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        server.register(key);
+                        continue;
+                    }
+                    ((Connection) key.attachment()).touch(now);
+                    if (key.isWritable()) {
+                        server.flush(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        server.addTask(key);
+                    }
+                }
+                if (wheel != null) {
+                    wheel.advance(now, this::expired);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("[" + Thread.currentThread().getName() + "] Selector failed: " + e.getMessage());
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = pending.poll()) != null) {
+            Connection conn = server.newConnection(this, channel);
+            try {
+                conn.setKey(channel.register(selector, SelectionKey.OP_READ, conn));
+            } catch (IOException e) {
+                System.out.println("[" + Thread.currentThread().getName() + "] Error registering channel: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+                server.discard(conn);
+                continue;
+            }
+            conn.touch(now);
+            if (wheel != null) {
+                wheel.schedule(conn, now + idleTimeout);
+            }
+        }
+    }
+
+    /**
+     * A connection's deadline came round. Activity since it was scheduled,
+     * tasks still in flight, or reads paused by admission control just
+     * push the deadline out; otherwise the connection is closed.
+     */
+    private void expired(Connection conn) {
+        SelectionKey key = conn.getKey();
+        if (!key.isValid()) {
+            return;
+        }
+        long deadline = conn.getLastActivity() + idleTimeout;
+        if (deadline > now) {
+            wheel.schedule(conn, deadline);
+        } else if (conn.getInFlight() > 0 || paused.contains(key)) {
+            wheel.schedule(conn, now + idleTimeout);
+        } else {
+            server.reap(key);
+        }
+    }
+
+    private static long millis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    private void enableWrites() {
+        SelectionKey key;
+        while ((key = writeRequests.poll()) != null) {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    /**
+     * Paused connections come back only once neither the admission
+     * watermarks nor an empty buffer pool still hold them; whichever is
+     * still holding will request the resume again when it clears.
+     */
+    private void resumeReads() {
+        resumeRequested = false;
+        if (awaitingBuffer) {
+            if (buffers.getAvailable() == 0) {
+                waitForBuffer();
+                return;
+            }
+            awaitingBuffer = false;
+        }
+        if (admission.isOverloaded()) {
+            return;
+        }
+        for (SelectionKey key : paused) {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+        admission.resumed(paused.size());
+        paused.clear();
+    }
+}
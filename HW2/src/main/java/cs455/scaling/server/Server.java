@@ -1,117 +1,377 @@
 package cs455.scaling.server;
 
-import cs455.scaling.Counter;
+import cs455.scaling.BufferPool;
+import cs455.scaling.Protocol;
+import cs455.scaling.audit.AuditLog;
+import cs455.scaling.metrics.ServerStatistics;
+import cs455.scaling.task.FairScheduler;
+import cs455.scaling.task.PoolTuner;
+import cs455.scaling.task.RequestHandler;
+import cs455.scaling.task.ResultCache;
 import cs455.scaling.task.Task;
 import cs455.scaling.task.TaskPool;
 
-import java.math.BigInteger;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.security.MessageDigest;
-import java.util.Iterator;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Server {
 
     private int port;
     private int poolSize;
+    private int poolMax;
+    private int readerCount;
+    private int highWatermark;
+    private int lowWatermark;
+    private AdmissionControl admission;
+    private FairScheduler fair;
+    private Map<String, Integer> weights;
     private ServerSocketChannel server;
-    private Selector selector;
-    private ByteBuffer buffer;
+    private Reactor acceptor;
+    private Reactor[] readers;
+    private AtomicInteger nextReader;
     private TaskPool tasks;
     public final int BUFFER_SIZE = 8192;
-    private Counter counter;
+    public final int BUFFER_POOL_SIZE = 1024;
+    public final int MAX_MESSAGES_PER_READ = 16;
+    // The default of 50 drops SYNs when many clients reconnect at once
+    public final int ACCEPT_BACKLOG = 1024;
+    public final int TUNER_INTERVAL_MILLIS = 1000;
+    public final int STATS_SAMPLE_MILLIS = 1000;
+    public final int STATS_REPORT_MILLIS = 20 * 1000;
+    private BufferPool bufferPool;
+    private ServerStatistics statistics;
+    private ConnectionTable connections;
+    private long idleTimeoutMillis = 300 * 1000;
+    private boolean logAccepts = true;
 
     public Server(int port, int poolSize) {
-        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this(port, poolSize, 0);
+    }
+
+    /**
+     * With readerCount == 0 a single selector accepts and reads. Otherwise
+     * a dedicated acceptor hands new channels round-robin to readerCount
+     * reader selectors, each running its own loop.
+     */
+    public Server(int port, int poolSize, int readerCount) {
+        this(port, poolSize, readerCount, 512, 128);
+    }
+
+    /**
+     * Reads stop on the busiest connections once highWatermark tasks are
+     * queued, and resume once the queue drains to lowWatermark.
+     */
+    public Server(int port, int poolSize, int readerCount, int highWatermark, int lowWatermark) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
         this.port = port;
         this.poolSize = poolSize;
-        this.counter = new Counter();
+        this.readerCount = readerCount;
+        this.nextReader = new AtomicInteger();
+        this.bufferPool = new BufferPool(BUFFER_SIZE, BUFFER_POOL_SIZE);
+        this.statistics = new ServerStatistics(STATS_REPORT_MILLIS / STATS_SAMPLE_MILLIS);
+        this.connections = new ConnectionTable();
+    }
+
+    /**
+     * Schedules tasks across connections by deficit round robin instead of
+     * plain work stealing. `weights` maps a client host address to its
+     * share; unlisted clients get weight 1. Call before init.
+     */
+    public void setFairScheduling(Map<String, Integer> weights) {
+        this.fair = new FairScheduler(BUFFER_SIZE);
+        this.weights = weights;
+    }
+
+    /**
+     * Lets a PoolTuner grow the pool from its initial size up to `max`
+     * workers and shrink it back down. Call before init.
+     */
+    public void setAutoTuning(int max) {
+        this.poolMax = max;
+    }
+
+    /**
+     * Caches digests of repeated payloads within `budgetBytes`. Call
+     * before init.
+     */
+    public void setResultCache(long budgetBytes) {
+        Task.setResultCache(new ResultCache(budgetBytes));
+    }
+
+    /**
+     * Replaces the default SHA-1 work done for each request. Call before
+     * init.
+     */
+    public void setRequestHandler(RequestHandler handler) {
+        Task.setRequestHandler(handler);
+    }
+
+    /**
+     * Closes connections idle for longer than `millis`; 0 never does.
+     * Five minutes by default. Call before init.
+     */
+    public void setIdleTimeout(long millis) {
+        this.idleTimeoutMillis = millis;
+    }
+
+    /**
+     * Records every result returned in an audit log under `directory`,
+     * written by its own thread. Call after setRequestHandler, which fixes
+     * the record size, and before init.
+     */
+    public void setAuditLog(Path directory) throws IOException {
+        AuditLog log = new AuditLog(directory, Task.getRequestHandler().getResultLength());
+        log.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(log::close));
+        Task.setAuditLog(log);
+    }
+
+    /**
+     * Whether every accepted connection is logged; on by default. Worth
+     * turning off under heavy connection churn, where the console write
+     * costs more than the accept. Call before init.
+     */
+    public void setLogAccepts(boolean logAccepts) {
+        this.logAccepts = logAccepts;
+    }
+
+    public ConnectionTable getConnections() {
+        return connections;
     }
 
     public void printCounter() {
-        while(true) {
-            System.out.println("Throughput: " + counter.getCount() / 20 + " per second.");
-            try {
-                Thread.sleep(20 * 1000);
-            } catch (Exception e) {}
-        }
+        statistics.report(STATS_SAMPLE_MILLIS, STATS_REPORT_MILLIS,
+                () -> {
+                    System.out.println("Connections: " + connections);
+                    System.out.println("Buffer pool: " + bufferPool);
+                    System.out.println("Task queue: " + admission);
+                    if (Task.getAuditLog() != null) {
+                        System.out.println("Audit log: " + Task.getAuditLog());
+                    }
+                    if (Task.getResultCache() != null) {
+                        System.out.println("Result cache: " + Task.getResultCache());
+                    }
+                    if (fair != null) {
+                        for (String line : fair.waitReport(10)) {
+                            System.out.println("Queue wait: " + line);
+                        }
+                    }
+                });
     }
 
     public void init() {
         try {
-            this.tasks = new TaskPool(this.poolSize);
+            this.tasks = new TaskPool(this.poolSize, this.fair);
+            if (this.poolMax > this.poolSize) {
+                new PoolTuner(this.tasks, this.poolSize, this.poolMax, TUNER_INTERVAL_MILLIS).start();
+            }
+            this.admission = new AdmissionControl(this.tasks, this.highWatermark, this.lowWatermark);
 
-            this.selector = Selector.open();
             this.server = ServerSocketChannel.open();
-            this.server.socket().bind(new InetSocketAddress(port));
+            this.server.socket().bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
             this.server.configureBlocking(false);
-            this.server.register(selector, SelectionKey.OP_ACCEPT);
-            new Thread(() -> printCounter()).start();
-
-            System.out.println("Server listening on " + server.getLocalAddress());
-            while(true) {
-                selector.select();
-                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-
-                while(keys.hasNext()) {
-                    SelectionKey key = keys.next();
-
-                    if (key.isAcceptable()) {
-                        System.out.println("Accepting new connection...");
-                        register(key);
-                    } else if (key.isReadable()) {
-                        addTask(key);
-                    }
 
-                    keys.remove();
+            this.acceptor = new Reactor(this, this.admission, this.bufferPool, this.idleTimeoutMillis);
+            this.acceptor.listen(this.server);
+            if (this.readerCount > 0) {
+                this.readers = new Reactor[this.readerCount];
+                for (int i = 0; i < this.readers.length; i++) {
+                    this.readers[i] = new Reactor(this, this.admission, this.bufferPool, this.idleTimeoutMillis);
+                    new Thread(this.readers[i], "Reader-" + i).start();
                 }
+            } else {
+                this.readers = new Reactor[] { this.acceptor };
             }
+            this.admission.setReactors(this.readers);
+            new Thread(() -> printCounter(), "Statistics").start();
+
+            System.out.println("Server listening on " + server.getLocalAddress() + " (" + Task.getRequestHandler().getName() + ")");
+            this.acceptor.run();
         } catch (Exception e){
             System.out.println(e.getMessage());
             e.printStackTrace();
         }
     }
 
-    private void register(SelectionKey key) {
+    void register(SelectionKey key) {
         try {
 
             ServerSocketChannel serverSocket = (ServerSocketChannel) key.channel();
             SocketChannel channel = serverSocket.accept();
+            if (channel == null) {
+                return;
+            }
+            if (logAccepts) {
+                System.out.println("Accepting new connection...");
+            }
             channel.configureBlocking(false);
-            channel.register(selector, SelectionKey.OP_READ);
+            int i = (nextReader.getAndIncrement() & Integer.MAX_VALUE) % readers.length;
+            readers[i].assign(channel);
 
         } catch (Exception e) {
             ;
         }
     }
 
-    private void addTask(SelectionKey key) {
-        this.counter.increment();
-        int read = 0;
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /**
+     * Reads complete messages into the buffer attached to the key's
+     * Connection, handing each full one to a Task: BUFFER_SIZE bytes for
+     * version 1 clients, one frame for version 2. A message split
+     * across segments stays attached until the rest arrives; several
+     * messages waiting in the socket are all drained, up to
+     * MAX_MESSAGES_PER_READ so one client can't monopolise the selector.
+     */
+    void addTask(SelectionKey key) {
+        Connection conn = (Connection) key.attachment();
         SocketChannel channel = (SocketChannel)key.channel();
+
+        for (int messages = 0; messages < MAX_MESSAGES_PER_READ; ) {
+            if (this.admission.shouldPause(conn, this.statistics.getActiveConnections())) {
+                conn.getReactor().pauseReads(key);
+                return;
+            }
+
+            if (conn.getInbound() == null) {
+                ByteBuffer buffer = this.bufferPool.lease();
+                if (buffer == null) {
+                    // Pool exhausted: leave the bytes in the socket until a task
+                    // hands a buffer back, so TCP flow control slows the client.
+                    conn.getReactor().pauseForBuffer(key);
+                    return;
+                }
+                conn.setInbound(buffer);
+            }
+
+            ByteBuffer message;
+            try {
+                message = conn.readMessage(key, channel);
+            } catch (IOException e) {
+                close(key);
+                return;
+            }
+            if (message == null) {
+                if (conn.getInbound() == null) {
+                    // Hello consumed; the protocol is known now
+                    continue;
+                }
+                return;
+            }
+
+            conn.getStats().increment();
+            conn.submitted();
+            if (conn.getProtocol() == Protocol.VERSION_2) {
+                this.tasks.addTask(new Task(key, message, conn.getRequestId()));
+            } else {
+                this.tasks.addTask(new Task(key, message));
+            }
+            messages++;
+        }
+    }
+
+    void flush(SelectionKey key) {
+        Connection conn = (Connection) key.attachment();
         try {
-            read = channel.read(buffer);
-            if (read > 0){
-                this.tasks.addTask(new Task(key, buffer));
+            if (!conn.flush((SocketChannel) key.channel())) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
             }
-        } catch (Exception e) {
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {}
+        Connection conn = (Connection) key.attachment();
+        conn.getReactor().forget(key);
+        discard(conn);
+    }
+
+    void reap(SelectionKey key) {
+        this.connections.reaped();
+        close(key);
+    }
 
+    /**
+     * Drops everything the server holds for a connection whose channel is
+     * already closed. Safe to call more than once.
+     */
+    void discard(Connection conn) {
+        if (!this.connections.remove(conn)) {
+            return;
+        }
+        conn.close();
+        this.statistics.unregister(conn.getStats());
+        if (conn.getFlow() != null) {
+            this.fair.removeFlow(conn.getFlow());
         }
     }
 
+    Connection newConnection(Reactor reactor, SocketChannel channel) {
+        Connection conn = new Connection(reactor, this.bufferPool, this.statistics.register());
+        this.connections.add(conn);
+        if (this.fair != null) {
+            String host = "unknown";
+            try {
+                InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                host = remote.getAddress().getHostAddress() + ":" + remote.getPort();
+                Integer weight = this.weights.get(remote.getAddress().getHostAddress());
+                conn.setFlow(this.fair.newFlow(host, weight == null ? 1 : weight));
+            } catch (IOException e) {
+                conn.setFlow(this.fair.newFlow(host, 1));
+            }
+        }
+        return conn;
+    }
+
     public static void main(String[] args) {
-        if (args.length != 2){
-            System.out.println("USAGE: java cs455.scaling.server.Server [Port] [Thread Pool Size]");
+        ServerOptions options;
+        try {
+            options = ServerOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("USAGE: java cs455.scaling.server.Server " + ServerOptions.USAGE);
             System.exit(1);
-        } else {
-            Server server = new Server(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
-            server.init();
+            return;
+        }
+        Server server = options.highWatermark > 0
+                ? new Server(options.port, options.poolSize, options.readers,
+                        options.highWatermark, options.lowWatermark)
+                : new Server(options.port, options.poolSize, options.readers);
+        if (options.poolMax > 0) {
+            server.setAutoTuning(options.poolMax);
+        }
+        if (options.fair) {
+            server.setFairScheduling(options.weights);
+        }
+        if (options.cacheBytes > 0) {
+            server.setResultCache(options.cacheBytes);
+        }
+        if (options.handler != null) {
+            server.setRequestHandler(options.handler);
+        }
+        if (options.idleTimeoutMillis >= 0) {
+            server.setIdleTimeout(options.idleTimeoutMillis);
+        }
+        if (options.auditLog != null) {
+            try {
+                server.setAuditLog(options.auditLog);
+            } catch (IOException e) {
+                System.out.println("Could not open audit log: " + e.getMessage());
+                System.exit(1);
+            }
         }
+        server.init();
     }
 
 }
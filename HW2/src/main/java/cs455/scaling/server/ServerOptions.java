@@ -0,0 +1,127 @@
+package cs455.scaling.server;
+
+import cs455.scaling.task.RequestHandler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line shared by Server and ThreadPerConnectionServer: the port,
+ * pool size and optional reader count stay positional, and every other
+ * option is a named flag that may appear in any order after them.
+ */
+class ServerOptions {
+
+    static final String USAGE = "[Port] [Thread Pool Size | Min-Max] [Reader Threads (optional)]"
+            + " [--watermarks High,Low] [--scheduler fifo|drr] [--weights host=weight,...]"
+            + " [--cache MB] [--handler sha1|sha256|crc32c] [--idle-timeout Seconds, 0 for none]"
+            + " [--audit-log Directory]";
+
+    int port;
+    int poolSize;
+    // 0 unless a Min-Max pool size was given
+    int poolMax;
+    int readers;
+    // 0 leaves the server's defaults
+    int highWatermark;
+    int lowWatermark;
+    boolean fair;
+    Map<String, Integer> weights = new HashMap<>();
+    long cacheBytes;
+    RequestHandler handler;
+    // -1 leaves the server's default
+    long idleTimeoutMillis = -1;
+    Path auditLog;
+
+    /**
+     * Throws IllegalArgumentException, with a message for the user, on
+     * anything it can't parse.
+     */
+    static ServerOptions parse(String[] args) {
+        ServerOptions o = new ServerOptions();
+        int positional = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    switch (positional++) {
+                        case 0:
+                            o.port = Integer.parseInt(arg);
+                            break;
+                        case 1:
+                            // "4-32" starts 4 workers and lets the pool tune itself up to 32
+                            String[] sizes = arg.split("-");
+                            o.poolSize = Integer.parseInt(sizes[0]);
+                            if (sizes.length == 2) {
+                                o.poolMax = Integer.parseInt(sizes[1]);
+                            }
+                            break;
+                        case 2:
+                            o.readers = Integer.parseInt(arg);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unexpected argument " + arg);
+                    }
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(arg + " needs a value");
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--watermarks":
+                        String[] marks = value.split(",");
+                        if (marks.length != 2) {
+                            throw new IllegalArgumentException("--watermarks takes High,Low");
+                        }
+                        o.highWatermark = Integer.parseInt(marks[0]);
+                        o.lowWatermark = Integer.parseInt(marks[1]);
+                        if (o.lowWatermark < 0 || o.lowWatermark >= o.highWatermark) {
+                            throw new IllegalArgumentException("--watermarks needs 0 <= Low < High");
+                        }
+                        break;
+                    case "--scheduler":
+                        if (!value.equals("fifo") && !value.equals("drr")) {
+                            throw new IllegalArgumentException("--scheduler is fifo or drr");
+                        }
+                        o.fair = value.equals("drr");
+                        break;
+                    case "--weights":
+                        for (String entry : value.split(",")) {
+                            String[] parts = entry.split("=");
+                            if (parts.length != 2) {
+                                throw new IllegalArgumentException("--weights takes host=weight,...");
+                            }
+                            o.weights.put(parts[0], Integer.parseInt(parts[1]));
+                        }
+                        break;
+                    case "--cache":
+                        o.cacheBytes = Long.parseLong(value) * 1024 * 1024;
+                        break;
+                    case "--handler":
+                        o.handler = RequestHandler.forName(value);
+                        break;
+                    case "--idle-timeout":
+                        o.idleTimeoutMillis = Long.parseLong(value) * 1000;
+                        break;
+                    case "--audit-log":
+                        o.auditLog = Paths.get(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + e.getMessage());
+        }
+        if (positional < 2) {
+            throw new IllegalArgumentException("Port and thread pool size are required");
+        }
+        if (!o.weights.isEmpty() && !o.fair) {
+            throw new IllegalArgumentException("--weights only applies with --scheduler drr");
+        }
+        return o;
+    }
+}
@@ -0,0 +1,351 @@
+package cs455.scaling.server;
+
+import cs455.scaling.BufferPool;
+import cs455.scaling.Hashing;
+import cs455.scaling.Protocol;
+import cs455.scaling.audit.AuditLog;
+import cs455.scaling.metrics.ConnectionStats;
+import cs455.scaling.metrics.ServerStatistics;
+import cs455.scaling.task.RequestHandler;
+import cs455.scaling.task.ResultCache;
+import cs455.scaling.task.Task;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Alternative to Server for comparison: each connection gets its own
+ * thread doing blocking reads, hashing with the same Task logic, and a
+ * blocking write. On a JDK with virtual threads (21+) those threads are
+ * virtual and [Thread Pool Size] sets the number of carrier threads;
+ * on older JDKs it falls back to one platform thread per connection.
+ *
+ * Both protocol versions are spoken. A connection waiting for its next
+ * request holds only its header and reply arrays, a few dozen bytes;
+ * message buffers come from a BufferPool once the first bytes arrive and
+ * go back as soon as the request is hashed, and a thread that finds the
+ * pool empty parks until one is released.
+ */
+public class ThreadPerConnectionServer {
+
+    private int port;
+    private ServerSocketChannel server;
+    private ThreadFactory threads;
+    public final int BUFFER_SIZE = 8192;
+    public final int BUFFER_POOL_SIZE = 1024;
+    public final int ACCEPT_BACKLOG = 1024;
+    public final int STATS_SAMPLE_MILLIS = 1000;
+    public final int STATS_REPORT_MILLIS = 20 * 1000;
+    private ServerStatistics statistics;
+    private BufferPool bufferPool;
+    private Set<Peer> peers;
+    private AtomicLong nextId;
+    private long idleTimeoutMillis = 300 * 1000;
+
+    public ThreadPerConnectionServer(int port, ThreadFactory threads) {
+        this.port = port;
+        this.threads = threads;
+        this.statistics = new ServerStatistics(STATS_REPORT_MILLIS / STATS_SAMPLE_MILLIS);
+        this.bufferPool = new BufferPool(BUFFER_SIZE, BUFFER_POOL_SIZE);
+        this.peers = ConcurrentHashMap.newKeySet();
+        this.nextId = new AtomicLong();
+    }
+
+    /**
+     * Same as Server.setResultCache. Call before init.
+     */
+    public void setResultCache(long budgetBytes) {
+        Task.setResultCache(new ResultCache(budgetBytes));
+    }
+
+    /**
+     * Same as Server.setRequestHandler. Call before init.
+     */
+    public void setRequestHandler(RequestHandler handler) {
+        Task.setRequestHandler(handler);
+    }
+
+    /**
+     * Closes connections idle for longer than `millis`; 0 never does.
+     * Five minutes by default. Call before init.
+     */
+    public void setIdleTimeout(long millis) {
+        this.idleTimeoutMillis = millis;
+    }
+
+    /**
+     * Same as Server.setAuditLog. Call after setRequestHandler and before
+     * init.
+     */
+    public void setAuditLog(Path directory) throws IOException {
+        AuditLog log = new AuditLog(directory, Task.getRequestHandler().getResultLength());
+        log.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(log::close));
+        Task.setAuditLog(log);
+    }
+
+    public void init() {
+        try {
+            this.server = ServerSocketChannel.open();
+            this.server.socket().bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+            new Thread(() -> statistics.report(STATS_SAMPLE_MILLIS, STATS_REPORT_MILLIS,
+                    () -> {
+                        System.out.println("Buffer pool: " + bufferPool);
+                        if (Task.getAuditLog() != null) {
+                            System.out.println("Audit log: " + Task.getAuditLog());
+                        }
+                        if (Task.getResultCache() != null) {
+                            System.out.println("Result cache: " + Task.getResultCache());
+                        }
+                    }), "Statistics").start();
+            if (idleTimeoutMillis > 0) {
+                Thread reaper = new Thread(this::reapIdle, "Reaper");
+                reaper.setDaemon(true);
+                reaper.start();
+            }
+
+            System.out.println("Server listening on " + server.getLocalAddress() + " (" + Task.getRequestHandler().getName() + ")");
+            while (true) {
+                SocketChannel channel = server.accept();
+                Peer peer = new Peer(channel, nextId.incrementAndGet());
+                peers.add(peer);
+                threads.newThread(() -> serve(peer)).start();
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void serve(Peer peer) {
+        SocketChannel channel = peer.channel;
+        ConnectionStats stats = statistics.register();
+        ByteBuffer header = ByteBuffer.allocate(Protocol.FRAME_HEADER_LENGTH);
+        int resultLength = Task.getRequestHandler().getResultLength();
+        // Room for a version 2 reply, or the result and then its hex
+        ByteBuffer reply = ByteBuffer.allocate(Math.max(Protocol.REPLY_HEADER_LENGTH + resultLength, 2 * resultLength));
+        try {
+            header.limit(Protocol.HELLO_LENGTH);
+            readFully(channel, header, peer);
+            boolean framed = negotiate(channel, header);
+            // A version 1 connection's first HELLO_LENGTH bytes are the
+            // start of its first message
+            boolean carried = !framed;
+
+            while (true) {
+                ByteBuffer request;
+                long requestId = 0;
+                if (framed) {
+                    header.clear();
+                    readFully(channel, header, peer);
+                    int length = header.getInt(0);
+                    if (length <= 0 || length > BUFFER_SIZE) {
+                        throw new IOException("Bad frame length " + length);
+                    }
+                    requestId = header.getLong(4);
+                    request = lease();
+                    request.limit(length);
+                } else {
+                    if (!carried) {
+                        header.clear();
+                        if (channel.read(header) < 0) {
+                            return;
+                        }
+                        peer.lastActivity = millis();
+                    }
+                    carried = false;
+                    header.flip();
+                    request = lease();
+                    request.put(header);
+                }
+
+                try {
+                    readFully(channel, request, peer);
+                    request.flip();
+                    Task.respond(request, reply, framed, requestId, peer.id);
+                } finally {
+                    bufferPool.release(request);
+                }
+                while (reply.hasRemaining()) {
+                    channel.write(reply);
+                }
+                peer.lastActivity = millis();
+                stats.increment();
+            }
+        } catch (IOException e) {
+            ;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            peers.remove(peer);
+            statistics.unregister(stats);
+            try {
+                channel.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Reads the hello and answers it as Connection.negotiate does. Returns
+     * true for version 2; refuses version 1 when the handler's result
+     * isn't a SHA-1 digest.
+     */
+    private boolean negotiate(SocketChannel channel, ByteBuffer hello) throws IOException {
+        int resultLength = Task.getRequestHandler().getResultLength();
+        if (hello.getInt(0) == Protocol.MAGIC && hello.getInt(4) == Protocol.VERSION_2) {
+            ByteBuffer reply = ByteBuffer.allocate(Protocol.HELLO_REPLY_LENGTH);
+            reply.putInt(Protocol.MAGIC).putInt(Protocol.VERSION_2).putInt(resultLength);
+            reply.flip();
+            while (reply.hasRemaining()) {
+                channel.write(reply);
+            }
+            return true;
+        }
+        if (resultLength != Hashing.DIGEST_LENGTH) {
+            System.out.println("Refusing version 1 client: results are " + resultLength + " bytes");
+            throw new IOException("Version 1 clients need a " + Hashing.DIGEST_LENGTH
+                    + " byte result, not " + resultLength);
+        }
+        return false;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer, Peer peer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+        peer.lastActivity = millis();
+    }
+
+    /**
+     * A buffer from the pool, parking until one is released if it is
+     * empty. Holding the thread here leaves the client's next bytes in
+     * the socket, the same backpressure Server gets by pausing reads.
+     */
+    private ByteBuffer lease() throws InterruptedException {
+        while (true) {
+            ByteBuffer buffer = bufferPool.lease();
+            if (buffer != null) {
+                return buffer;
+            }
+            CountDownLatch released = new CountDownLatch(1);
+            bufferPool.onAvailable(released::countDown);
+            released.await();
+        }
+    }
+
+    /**
+     * Closes connections with no reads or writes for the idle timeout,
+     * which wakes their threads out of the blocking read.
+     */
+    private void reapIdle() {
+        long tick = Math.max(10, idleTimeoutMillis / 10);
+        while (true) {
+            try {
+                Thread.sleep(tick);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = millis();
+            for (Peer peer : peers) {
+                if (now - peer.lastActivity > idleTimeoutMillis) {
+                    try {
+                        peer.channel.close();
+                    } catch (IOException e) {}
+                }
+            }
+        }
+    }
+
+    private static long millis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    private static class Peer {
+        final SocketChannel channel;
+        final long id;
+        volatile long lastActivity;
+
+        Peer(SocketChannel channel, long id) {
+            this.channel = channel;
+            this.id = id;
+            this.lastActivity = millis();
+        }
+    }
+
+    /**
+     * A factory for virtual threads when the running JDK has them, looked
+     * up reflectively so the code still builds for Java 11.
+     */
+    static ThreadFactory newThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "Connection-", 0L);
+            Method factory = builderType.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads unavailable on this JDK; using one platform thread per connection.");
+            return r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+
+    /**
+     * Takes the same arguments as Server. Reader threads, watermarks and
+     * scheduling have no meaning without a selector or task queue, so
+     * they are accepted and ignored; a Min-Max pool size uses Max carrier
+     * threads.
+     */
+    public static void main(String[] args) {
+        ServerOptions options;
+        try {
+            options = ServerOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("USAGE: java cs455.scaling.server.ThreadPerConnectionServer " + ServerOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        if (options.readers > 0 || options.highWatermark > 0 || options.fair) {
+            System.out.println("Reader threads, watermarks and scheduling don't apply to one thread per connection; ignoring them.");
+        }
+        // Must be set before the first virtual thread is created
+        System.setProperty("jdk.virtualThreadScheduler.parallelism",
+                String.valueOf(Math.max(options.poolSize, options.poolMax)));
+        ThreadPerConnectionServer server = new ThreadPerConnectionServer(options.port, newThreadFactory());
+        if (options.cacheBytes > 0) {
+            server.setResultCache(options.cacheBytes);
+        }
+        if (options.handler != null) {
+            server.setRequestHandler(options.handler);
+        }
+        if (options.idleTimeoutMillis >= 0) {
+            server.setIdleTimeout(options.idleTimeoutMillis);
+        }
+        if (options.auditLog != null) {
+            try {
+                server.setAuditLog(options.auditLog);
+            } catch (IOException e) {
+                System.out.println("Could not open audit log: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        server.init();
+    }
+}
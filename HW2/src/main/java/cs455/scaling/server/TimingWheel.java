@@ -0,0 +1,94 @@
+package cs455.scaling.server;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel of connection deadlines for one reactor. Each slot
+ * is an intrusive doubly-linked list threaded through the connections, so
+ * scheduling and cancelling are O(1) with no allocation; deadlines further
+ * out than one revolution sit in their slot until the wheel comes round
+ * on the right lap. Reactor thread only.
+ */
+class TimingWheel {
+
+    private final long tickMillis;
+    private final Connection[] slots;
+    private final int mask;
+    private long current;
+    private int size;
+
+    TimingWheel(long tickMillis, int slotCount, long now) {
+        int n = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.slots = new Connection[n];
+        this.mask = n - 1;
+        this.current = now / tickMillis;
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Schedules `conn` to expire at `deadline`, rounded up to the next
+     * tick, replacing any deadline it already had.
+     */
+    void schedule(Connection conn, long deadline) {
+        cancel(conn);
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, current + 1);
+        int slot = (int) (tick & mask);
+        conn.wheelTick = tick;
+        conn.wheelPrev = null;
+        conn.wheelNext = slots[slot];
+        if (slots[slot] != null) {
+            slots[slot].wheelPrev = conn;
+        }
+        slots[slot] = conn;
+        size++;
+    }
+
+    void cancel(Connection conn) {
+        if (conn.wheelTick < 0) {
+            return;
+        }
+        if (conn.wheelPrev != null) {
+            conn.wheelPrev.wheelNext = conn.wheelNext;
+        } else {
+            slots[(int) (conn.wheelTick & mask)] = conn.wheelNext;
+        }
+        if (conn.wheelNext != null) {
+            conn.wheelNext.wheelPrev = conn.wheelPrev;
+        }
+        conn.wheelPrev = null;
+        conn.wheelNext = null;
+        conn.wheelTick = -1;
+        size--;
+    }
+
+    /**
+     * Moves the wheel up to `now`, handing every connection whose deadline
+     * has passed to `expired`. A connection is off the wheel by the time
+     * `expired` sees it, so the callback may schedule it again.
+     */
+    void advance(long now, Consumer<Connection> expired) {
+        long target = now / tickMillis;
+        // After a long stall every slot is due at most once
+        long from = Math.max(current + 1, target - mask);
+        for (long t = from; t <= target; t++) {
+            Connection conn = slots[(int) (t & mask)];
+            while (conn != null) {
+                Connection next = conn.wheelNext;
+                if (conn.wheelTick <= target) {
+                    cancel(conn);
+                    expired.accept(conn);
+                }
+                conn = next;
+            }
+        }
+        current = Math.max(current, target);
+    }
+}
@@ -0,0 +1,36 @@
+package cs455.scaling.task;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C of the request, as four big-endian bytes. The JDK compiles
+ * CRC32C.update to the CPU's CRC instructions, so this is close to the
+ * cost of just touching the bytes: a baseline for how much of a run is
+ * the server itself rather than the work. Instances are leased for each
+ * call the way DigestHandler leases its state.
+ */
+public class Crc32cHandler implements RequestHandler {
+
+    private final ConcurrentLinkedQueue<CRC32C> free = new ConcurrentLinkedQueue<>();
+
+    public String getName() {
+        return "crc32c";
+    }
+
+    public int getResultLength() {
+        return 4;
+    }
+
+    public void handle(ByteBuffer request, ByteBuffer response) {
+        CRC32C crc = free.poll();
+        if (crc == null) {
+            crc = new CRC32C();
+        }
+        crc.reset();
+        crc.update(request);
+        response.putInt((int) crc.getValue());
+        free.add(crc);
+    }
+}
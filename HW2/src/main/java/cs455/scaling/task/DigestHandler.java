@@ -0,0 +1,67 @@
+package cs455.scaling.task;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Any MessageDigest algorithm. Instances and their output arrays are
+ * leased for each call rather than kept per thread, so there are only
+ * ever as many as there are requests being hashed at once, however many
+ * threads the server runs.
+ */
+public class DigestHandler implements RequestHandler {
+
+    private final String name;
+    private final String algorithm;
+    private final int length;
+    private final ConcurrentLinkedQueue<State> free;
+
+    public DigestHandler(String name, String algorithm) {
+        this.name = name;
+        this.algorithm = algorithm;
+        this.free = new ConcurrentLinkedQueue<>();
+        State s = new State();
+        this.length = s.digest.getDigestLength();
+        free.add(s);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getResultLength() {
+        return length;
+    }
+
+    public void handle(ByteBuffer request, ByteBuffer response) {
+        State s = free.poll();
+        if (s == null) {
+            s = new State();
+        }
+        s.digest.update(request);
+        try {
+            s.digest.digest(s.out, 0, length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        response.put(s.out, 0, length);
+        free.add(s);
+    }
+
+    private class State {
+        final MessageDigest digest;
+        final byte[] out;
+
+        State() {
+            try {
+                this.digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+            this.out = new byte[digest.getDigestLength()];
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package cs455.scaling.task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deficit round robin across connections. Each connection has its own
+ * FIFO of tasks; active connections take turns, and on each turn a
+ * connection may run tasks worth up to `quantum * weight` bytes plus any
+ * deficit left from its last turn. A client flooding the server only
+ * lengthens its own queue, so small clients keep a short wait.
+ *
+ * All state sits behind one lock; every operation under it is O(1)
+ * amortized, so workers hold it only briefly.
+ */
+public class FairScheduler {
+
+    private final int quantum;
+    private final ArrayDeque<Flow> active;
+    private final Set<Flow> flows;
+
+    public FairScheduler(int quantum) {
+        this.quantum = quantum;
+        this.active = new ArrayDeque<>();
+        this.flows = ConcurrentHashMap.newKeySet();
+    }
+
+    public Flow newFlow(String name, int weight) {
+        Flow flow = new Flow(name, Math.max(1, weight));
+        flows.add(flow);
+        return flow;
+    }
+
+    public void removeFlow(Flow flow) {
+        flows.remove(flow);
+    }
+
+    synchronized void offer(Flow flow, Task t, int cost) {
+        t.enqueued(System.nanoTime(), cost);
+        flow.queue.addLast(t);
+        if (!flow.active) {
+            flow.active = true;
+            active.addLast(flow);
+        }
+    }
+
+    synchronized Task poll() {
+        while (!active.isEmpty()) {
+            Flow flow = active.peekFirst();
+            if (!flow.inTurn) {
+                flow.deficit += (long) quantum * flow.weight;
+                flow.inTurn = true;
+            }
+
+            Task head = flow.queue.peekFirst();
+            if (head.getCost() <= flow.deficit) {
+                flow.queue.pollFirst();
+                flow.deficit -= head.getCost();
+                if (flow.queue.isEmpty()) {
+                    // An idle flow doesn't bank credit for later
+                    flow.deficit = 0;
+                    flow.inTurn = false;
+                    flow.active = false;
+                    active.pollFirst();
+                }
+                flow.waited(System.nanoTime() - head.getEnqueuedAt());
+                return head;
+            }
+
+            flow.inTurn = false;
+            active.addLast(active.pollFirst());
+        }
+        return null;
+    }
+
+    synchronized boolean hasWork() {
+        return !active.isEmpty();
+    }
+
+    /**
+     * Per-client queue wait since the last call, worst mean first, for at
+     * most `limit` clients. Resets the wait counters.
+     */
+    public List<String> waitReport(int limit) {
+        List<Flow> snapshot = new ArrayList<>(flows);
+        List<long[]> waits = new ArrayList<>();
+        synchronized (this) {
+            for (Flow flow : snapshot) {
+                waits.add(new long[] { flow.waitCount, flow.waitTotal, flow.waitMax });
+                flow.waitCount = 0;
+                flow.waitTotal = 0;
+                flow.waitMax = 0;
+            }
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (waits.get(i)[0] > 0) {
+                order.add(i);
+            }
+        }
+        order.sort((a, b) -> Double.compare(mean(waits.get(b)), mean(waits.get(a))));
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, order.size()); i++) {
+            Flow flow = snapshot.get(order.get(i));
+            long[] w = waits.get(order.get(i));
+            lines.add(String.format("%s weight=%d tasks=%d mean wait=%.3f ms max wait=%.3f ms",
+                    flow.name, flow.weight, w[0], mean(w) / 1e6, w[2] / 1e6));
+        }
+        return lines;
+    }
+
+    private static double mean(long[] w) {
+        return w[0] == 0 ? 0 : (double) w[1] / w[0];
+    }
+
+    /**
+     * One connection's queue and DRR state. Fields are guarded by the
+     * scheduler's lock.
+     */
+    public static class Flow {
+        private final String name;
+        private final int weight;
+        private final ArrayDeque<Task> queue;
+        private long deficit;
+        private boolean active;
+        private boolean inTurn;
+        private long waitCount;
+        private long waitTotal;
+        private long waitMax;
+
+        private Flow(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+            this.queue = new ArrayDeque<>();
+        }
+
+        private void waited(long nanos) {
+            waitCount++;
+            waitTotal += nanos;
+            if (nanos > waitMax) {
+                waitMax = nanos;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package cs455.scaling.task;
+
+/**
+ * Resizes a TaskPool between `min` and `max` workers from what it measures
+ * each interval: the mean time tasks sat queued and the fraction of worker
+ * time spent running tasks.
+ *
+ * The pool grows by a quarter (at least one worker) when tasks wait longer
+ * than GROW_DELAY_MILLIS while workers are more than GROW_UTILIZATION busy,
+ * and shrinks by one when waits are under SHRINK_DELAY_MILLIS and workers
+ * are less than SHRINK_UTILIZATION busy. Either condition has to hold for
+ * STABLE_INTERVALS in a row, and nothing changes for COOLDOWN_INTERVALS
+ * after a resize, so the size doesn't flap around a threshold.
+ */
+public class PoolTuner extends Thread {
+
+    public static final double GROW_DELAY_MILLIS = 2.0;
+    public static final double GROW_UTILIZATION = 0.75;
+    public static final double SHRINK_DELAY_MILLIS = 0.2;
+    public static final double SHRINK_UTILIZATION = 0.35;
+    public static final int STABLE_INTERVALS = 3;
+    public static final int COOLDOWN_INTERVALS = 3;
+
+    private final TaskPool pool;
+    private final int min;
+    private final int max;
+    private final long intervalMillis;
+    private int growVotes;
+    private int shrinkVotes;
+    private int cooldown;
+
+    public PoolTuner(TaskPool pool, int min, int max, long intervalMillis) {
+        super("Pool Tuner");
+        setDaemon(true);
+        this.pool = pool;
+        this.min = min;
+        this.max = max;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void run() {
+        pool.setInstrumented(true);
+        pool.drainQueueDelay();
+        long lastBusy = pool.busyNanos();
+        long last = System.nanoTime();
+        int lastSize = pool.getPoolSize();
+
+        while (true) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            long busy = pool.busyNanos();
+            int size = pool.getPoolSize();
+            long[] delay = pool.drainQueueDelay();
+            double meanDelayMillis = delay[1] == 0 ? 0 : delay[0] / (double) delay[1] / 1e6;
+            // Workers removed since the last sample take their busy time
+            // with them, so clamp rather than report a negative interval.
+            double utilization = Math.max(0, Math.min(1,
+                    (busy - lastBusy) / ((double) (now - last) * Math.max(size, lastSize))));
+            lastBusy = busy;
+            last = now;
+            lastSize = size;
+
+            decide(size, meanDelayMillis, utilization);
+        }
+    }
+
+    private void decide(int size, double meanDelayMillis, double utilization) {
+        if (cooldown > 0) {
+            cooldown--;
+            return;
+        }
+
+        if (meanDelayMillis > GROW_DELAY_MILLIS && utilization > GROW_UTILIZATION && size < max) {
+            growVotes++;
+            shrinkVotes = 0;
+        } else if (meanDelayMillis < SHRINK_DELAY_MILLIS && utilization < SHRINK_UTILIZATION && size > min) {
+            shrinkVotes++;
+            growVotes = 0;
+        } else {
+            growVotes = 0;
+            shrinkVotes = 0;
+        }
+
+        int target = size;
+        if (growVotes >= STABLE_INTERVALS) {
+            target = Math.min(max, size + Math.max(1, size / 4));
+        } else if (shrinkVotes >= STABLE_INTERVALS) {
+            target = Math.max(min, size - 1);
+        }
+        if (target == size) {
+            return;
+        }
+
+        System.out.println(String.format("[%s] Resizing pool %d -> %d (mean queue delay %.3f ms, utilization %.0f%%)",
+                getName(), size, target, meanDelayMillis, utilization * 100));
+        pool.resize(target);
+        growVotes = 0;
+        shrinkVotes = 0;
+        cooldown = COOLDOWN_INTERVALS;
+    }
+}
@@ -0,0 +1,44 @@
+package cs455.scaling.task;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The work a Task does for one request, chosen once at startup. The
+ * handler reads the request straight out of the pooled buffer it was
+ * received into and writes a fixed-length result into the pooled buffer
+ * the reply goes out in; Task adds the framing for the client's protocol
+ * (hex for version 1, request id and raw bytes for version 2).
+ *
+ * Handlers are shared by every thread, so any per-call state has to be
+ * leased for the call. Keeping it per thread would mean a copy for every
+ * connection when each connection has a thread of its own.
+ */
+public interface RequestHandler {
+
+    String getName();
+
+    /**
+     * Number of bytes `handle` writes for every request.
+     */
+    int getResultLength();
+
+    /**
+     * Reads the request between position and limit, possibly consuming
+     * it, and writes getResultLength() bytes at the response's position.
+     * The two buffers are never the same.
+     */
+    void handle(ByteBuffer request, ByteBuffer response);
+
+    static RequestHandler forName(String name) {
+        switch (name.toLowerCase()) {
+            case "sha1":
+                return new Sha1Handler();
+            case "sha256":
+                return new DigestHandler("sha256", "SHA-256");
+            case "crc32c":
+                return new Crc32cHandler();
+            default:
+                throw new IllegalArgumentException("Unknown request handler " + name);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package cs455.scaling.task;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of handler results for payloads seen before. Entries are found by
+ * a cheap fingerprint (the length and eight longs sampled across the
+ * payload) and only count as a hit if the stored copy of the payload
+ * matches byte for byte. Eviction is CLOCK: a hit marks the entry, and
+ * the hand gives marked entries a second pass before evicting.
+ *
+ * The budget covers the stored payloads and results plus a fixed
+ * allowance per entry for bookkeeping.
+ */
+public class ResultCache {
+
+    public static final int ENTRY_OVERHEAD = 96;
+    private static final int SAMPLES = 8;
+
+    private final long budget;
+    private final ConcurrentHashMap<Long, Entry> map;
+    private final ArrayDeque<Entry> clock;
+    private final AtomicLong used;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public ResultCache(long budgetBytes) {
+        this.budget = budgetBytes;
+        this.map = new ConcurrentHashMap<>();
+        this.clock = new ArrayDeque<>();
+        this.used = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Result for the payload between position and limit if it is cached,
+     * otherwise null. Does not move the buffer's position.
+     */
+    public byte[] get(ByteBuffer payload) {
+        Entry entry = map.get(fingerprint(payload));
+        if (entry != null && entry.payload.equals(payload)) {
+            entry.referenced = true;
+            hits.increment();
+            return entry.result;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches the result between position and limit of `result` for the
+     * payload between position and limit of `payload`. Copies both; moves
+     * neither buffer's position.
+     */
+    public void put(ByteBuffer payload, ByteBuffer result) {
+        int length = payload.remaining();
+        long size = length + result.remaining() + ENTRY_OVERHEAD;
+        if (size > budget) {
+            return;
+        }
+        Long key = fingerprint(payload);
+        if (map.containsKey(key)) {
+            return;
+        }
+
+        byte[] copy = new byte[length];
+        payload.duplicate().get(copy);
+        byte[] value = new byte[result.remaining()];
+        result.duplicate().get(value);
+        Entry entry = new Entry(key, ByteBuffer.wrap(copy).asReadOnlyBuffer(), value, size);
+
+        synchronized (clock) {
+            if (map.putIfAbsent(key, entry) != null) {
+                return;
+            }
+            clock.addLast(entry);
+            used.addAndGet(size);
+            while (used.get() > budget) {
+                Entry hand = clock.pollFirst();
+                if (hand.referenced) {
+                    hand.referenced = false;
+                    clock.addLast(hand);
+                } else {
+                    map.remove(hand.key, hand);
+                    used.addAndGet(-hand.size);
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    static long fingerprint(ByteBuffer payload) {
+        int start = payload.position();
+        int length = payload.remaining();
+        long h = length * 0x9E3779B97F4A7C15L;
+        if (length >= 8) {
+            int step = (length - 8) / (SAMPLES - 1);
+            for (int i = 0; i < SAMPLES; i++) {
+                h = (h ^ payload.getLong(start + i * step)) * 0xBF58476D1CE4E5B9L;
+                h ^= h >>> 31;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                h = (h ^ payload.get(start + i)) * 0xBF58476D1CE4E5B9L;
+            }
+        }
+        return h;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d ratio=%.1f%% evictions=%d entries=%d bytes=%d/%d",
+                getHits(), getMisses(), getHitRatio() * 100, evictions.sum(), map.size(), used.get(), budget);
+    }
+
+    private static class Entry {
+        final Long key;
+        final ByteBuffer payload;
+        final byte[] result;
+        final long size;
+        volatile boolean referenced;
+
+        Entry(Long key, ByteBuffer payload, byte[] result, long size) {
+            this.key = key;
+            this.payload = payload;
+            this.result = result;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package cs455.scaling.task;
+
+/**
+ * The original workload: the SHA-1 digest of the request.
+ */
+public class Sha1Handler extends DigestHandler {
+
+    public Sha1Handler() {
+        super("sha1", "SHA-1");
+    }
+}
@@ -1,47 +1,176 @@
 package cs455.scaling.task;
 
-import cs455.scaling.Counter;
+import cs455.scaling.BufferPool;
+import cs455.scaling.Hashing;
+import cs455.scaling.Protocol;
+import cs455.scaling.audit.AuditLog;
+import cs455.scaling.server.Connection;
 
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.SocketChannel;
-import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class Task implements Runnable {
 
+    // Shared by every Task; null unless the server was started with one
+    private static volatile ResultCache cache;
+    private static volatile RequestHandler handler = new Sha1Handler();
+    private static volatile AuditLog audit;
+
+    // Where a reply is built when it can't get a buffer of its own; leased
+    // for the call so there are only as many as replies built at once
+    private static final ConcurrentLinkedQueue<ByteBuffer> SCRATCH = new ConcurrentLinkedQueue<>();
+
     private SelectionKey key;
     public ByteBuffer buffer;
+    private boolean framed;
+    private long requestId;
+    private long enqueuedAt;
+    private int cost;
 
     public Task(SelectionKey key, ByteBuffer buffer) {
         this.key = key;
         this.buffer = buffer;
     }
 
+    /**
+     * A version 2 request; the reply carries `requestId` and the raw digest.
+     */
+    public Task(SelectionKey key, ByteBuffer buffer, long requestId) {
+        this(key, buffer);
+        this.framed = true;
+        this.requestId = requestId;
+    }
+
+    public FairScheduler.Flow getFlow() {
+        return ((Connection) this.key.attachment()).getFlow();
+    }
+
+    void enqueued(long time, int cost) {
+        this.enqueuedAt = time;
+        this.cost = cost;
+    }
+
+    long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    int getCost() {
+        return cost;
+    }
+
+    /**
+     * Runs the handler on the message and builds the reply in a fresh
+     * buffer from the pool, handing the message's buffer straight back.
+     * If the pool is exhausted the reply reuses the message's buffer.
+     * The reply is queued on the connection and written by the reactor on
+     * OP_WRITE, so the worker never touches the socket.
+     */
     public void run() {
-        byte[] data = buffer.array();
-        //System.out.println(Arrays.toString(data));
-        SocketChannel channel = (SocketChannel) this.key.channel();
-        ByteBuffer buf = ByteBuffer.wrap(this.SHA1FromBytes(data).getBytes());
-
-        while (buf.hasRemaining()) {
-            try {
-                channel.write(buf);
-            } catch (Exception e) {}
+        buffer.flip();
+        Connection conn = (Connection) this.key.attachment();
+        BufferPool pool = conn.getBufferPool();
+        ByteBuffer reply = pool.lease();
+        if (reply == null) {
+            respondInPlace(buffer, framed, requestId, conn.getId());
+            reply = buffer;
+        } else {
+            respond(buffer, reply, framed, requestId, conn.getId());
+            pool.release(buffer);
+        }
+        conn.send(this.key, reply);
+    }
+
+    /**
+     * Replaces the message between position and limit with its version 1
+     * reply, ready to be written.
+     */
+    public static void process(ByteBuffer buffer) {
+        respondInPlace(buffer, false, 0, 0);
+    }
+
+    public static void processFramed(ByteBuffer buffer, long requestId) {
+        respondInPlace(buffer, true, requestId, 0);
+    }
+
+    /**
+     * Writes the reply to the request between position and limit into
+     * `reply`, flipped and ready to be written: the request id and raw
+     * result when `framed`, otherwise the result in hex. The result is
+     * audited against `connection`, 0 when connections aren't tracked.
+     */
+    public static void respond(ByteBuffer request, ByteBuffer reply, boolean framed, long requestId,
+                               long connection) {
+        reply.clear();
+        if (framed) {
+            reply.putLong(requestId);
+        }
+        int start = reply.position();
+        handle(request, reply);
+        AuditLog log = audit;
+        if (log != null) {
+            log.append(connection, reply, start, reply.position() - start);
+        }
+        if (!framed) {
+            Hashing.hex(reply, start, reply.position() - start);
         }
+        reply.flip();
+    }
+
+    private static void respondInPlace(ByteBuffer buffer, boolean framed, long requestId, long connection) {
+        ByteBuffer scratch = SCRATCH.poll();
+        if (scratch == null) {
+            scratch = ByteBuffer.allocate(Protocol.MESSAGE_SIZE);
+        }
+        respond(buffer, scratch, framed, requestId, connection);
+        buffer.clear();
+        buffer.put(scratch);
+        buffer.flip();
+        SCRATCH.add(scratch);
+    }
+
+    public static void setRequestHandler(RequestHandler requestHandler) {
+        handler = requestHandler;
+    }
 
+    public static RequestHandler getRequestHandler() {
+        return handler;
     }
 
-    private String SHA1FromBytes(byte[] data) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA1");
-            byte[] hash = digest.digest(data);
-            BigInteger hashInt = new BigInteger(1, hash);
-            return hashInt.toString(16);
-        } catch (Exception  e) {
-            ;
+    public static void setAuditLog(AuditLog auditLog) {
+        audit = auditLog;
+    }
+
+    public static AuditLog getAuditLog() {
+        return audit;
+    }
+
+    public static void setResultCache(ResultCache resultCache) {
+        cache = resultCache;
+    }
+
+    public static ResultCache getResultCache() {
+        return cache;
+    }
+
+    private static void handle(ByteBuffer request, ByteBuffer response) {
+        ResultCache c = cache;
+        if (c == null) {
+            handler.handle(request, response);
+            return;
+        }
+        byte[] result = c.get(request);
+        if (result != null) {
+            response.put(result);
+            return;
         }
-        return null;
+        int start = request.position();
+        int out = response.position();
+        handler.handle(request, response);
+        request.position(start);
+        ByteBuffer written = response.duplicate();
+        written.flip().position(out);
+        c.put(request, written);
     }
 
 }
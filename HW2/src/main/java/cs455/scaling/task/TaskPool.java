@@ -1,67 +1,243 @@
 package cs455.scaling.task;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Fixed set of workers, each with its own deque. New tasks are spread
+ * round-robin across the deques and an idle worker is woken directly, so
+ * there is no central dispatcher thread. Workers that run dry steal from
+ * the tail of another worker's deque before parking.
+ *
+ * Given a FairScheduler, tasks that belong to a flow are instead queued
+ * per connection and workers take them in deficit round robin order.
+ *
+ * The worker set can be resized while running (see PoolTuner). A worker
+ * that is removed stops receiving new tasks, hands back anything left in
+ * its deque, and exits.
+ */
 public class TaskPool {
 
-    private TaskWorker[] workers;
-    private PriorityQueue<Task> queue;
+    private volatile TaskWorker[] workers;
+    private int nextIndex;
+    private ConcurrentLinkedQueue<TaskWorker> idle;
+    private AtomicInteger next;
+    private AtomicInteger depth;
+    // Set by whoever builds the admission control, read by the workers
+    private volatile int lowWatermark;
+    private volatile Runnable drainedListener;
+    private FairScheduler fair;
+
+    // Only collected while a PoolTuner is attached
+    private volatile boolean instrumented;
+    private LongAdder queueDelay;
+    private LongAdder queueCount;
 
     public TaskPool(int numThreads) {
+        this(numThreads, null);
+    }
+
+    public TaskPool(int numThreads, FairScheduler fair) {
+        this.fair = fair;
         this.workers = new TaskWorker[numThreads];
-        this.queue = new PriorityQueue<>(new Comparator<Task>() {
-            @Override
-            public int compare(Task o1, Task o2) {
-                return 0;
-            }
-        });
+        this.idle = new ConcurrentLinkedQueue<>();
+        this.next = new AtomicInteger();
+        this.depth = new AtomicInteger();
+        this.queueDelay = new LongAdder();
+        this.queueCount = new LongAdder();
         init();
     }
 
     private void init() {
         for (int i = 0; i < this.workers.length; i++) {
-            workers[i] = new TaskWorker();
-            workers[i].start();
+            workers[i] = new TaskWorker(this, nextIndex++);
+        }
+        for (TaskWorker worker : this.workers) {
+            worker.start();
         }
-        new Thread(this::run).start();
     }
 
     public void addTask(Task t) {
-        synchronized (queue) {
-            //System.out.println("Added Task");
-            queue.add(t);
-            queue.notify();
-        }
-    }
-
-    public void run() {
-        while (true) {
-            // Pop a task to assign
-            Task t;
-
-            try {
-                synchronized (queue) {
-                    while (queue.peek() == null) {
-                        queue.wait();
-                    }
-                }
-                t = queue.poll();
-                //System.out.println("Task popped");
-                boolean assigned = false;
-                while (!assigned) {
-                    for (TaskWorker worker : workers) {
-                        if (worker.getStatus() == 0) {
-                            //System.out.println("Assigning task");
-                            worker.setTask(t);
-                            assigned = true;
-                            break;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                ;
+        depth.incrementAndGet();
+        if (instrumented) {
+            t.enqueued(System.nanoTime(), t.buffer.position());
+        }
+        dispatch(t);
+    }
+
+    private void dispatch(Task t) {
+        Thread current = Thread.currentThread();
+        FairScheduler.Flow flow = fair != null ? t.getFlow() : null;
+        TaskWorker target = null;
+        if (flow != null) {
+            fair.offer(flow, t, t.buffer.position());
+        } else if (current instanceof TaskWorker && ((TaskWorker) current).getPool() == this
+                && !((TaskWorker) current).isRetiring()) {
+            target = (TaskWorker) current;
+            target.push(t);
+        } else {
+            TaskWorker[] ws = workers;
+            target = ws[(next.getAndIncrement() & Integer.MAX_VALUE) % ws.length];
+            target.push(t);
+        }
+
+        // The target may have been retired after we read the array; if so
+        // nobody will run its deque, so move whatever is there.
+        if (target != null && target.isRetired()) {
+            reclaim(target);
+        }
+
+        // A retiring worker may still be in `idle`, but it exits without
+        // taking anything, so the wakeup has to go to someone else.
+        TaskWorker sleeper;
+        while ((sleeper = idle.poll()) != null) {
+            if (!sleeper.isRetiring()) {
+                sleeper.wake();
+                break;
+            }
+        }
+    }
+
+    void reclaim(TaskWorker retired) {
+        Task t;
+        while ((t = retired.steal()) != null) {
+            dispatch(t);
+        }
+    }
+
+    public int getPoolSize() {
+        return workers.length;
+    }
+
+    /**
+     * Grows or shrinks the worker set to `size` threads.
+     */
+    public synchronized void resize(int size) {
+        TaskWorker[] current = workers;
+        if (size == current.length || size < 1) {
+            return;
+        }
+        TaskWorker[] resized = new TaskWorker[size];
+        System.arraycopy(current, 0, resized, 0, Math.min(size, current.length));
+        for (int i = current.length; i < size; i++) {
+            resized[i] = new TaskWorker(this, nextIndex++);
+        }
+        workers = resized;
+
+        for (int i = current.length; i < size; i++) {
+            resized[i].start();
+        }
+        for (int i = size; i < current.length; i++) {
+            current[i].retire();
+        }
+    }
+
+    void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    /**
+     * Total nanoseconds tasks spent queued, and how many tasks, since
+     * the last call. Only counted while instrumented.
+     */
+    long[] drainQueueDelay() {
+        return new long[] { queueDelay.sumThenReset(), queueCount.sumThenReset() };
+    }
+
+    /**
+     * Sum of busy nanoseconds across the current workers.
+     */
+    long busyNanos() {
+        long total = 0;
+        for (TaskWorker w : workers) {
+            total += w.getBusyNanos();
+        }
+        return total;
+    }
+
+    public FairScheduler getFairScheduler() {
+        return fair;
+    }
+
+    /**
+     * Number of tasks added but not yet picked up by a worker.
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Runs `listener` on the worker thread each time taking a task leaves
+     * the queue depth at or below `lowWatermark`. The listener must be
+     * cheap; it runs on every such take, which below the watermark is
+     * every take.
+     */
+    public void onDrained(int lowWatermark, Runnable listener) {
+        this.lowWatermark = lowWatermark;
+        this.drainedListener = listener;
+    }
+
+    void taken(Task t) {
+        if (instrumented) {
+            queueDelay.add(System.nanoTime() - t.getEnqueuedAt());
+            queueCount.increment();
+        }
+        int d = depth.decrementAndGet();
+        Runnable listener = drainedListener;
+        if (listener != null && d <= lowWatermark) {
+            listener.run();
+        }
+    }
+
+    Task next(TaskWorker worker) {
+        Task t = null;
+        if (fair != null) {
+            t = fair.poll();
+        }
+        if (t == null) {
+            t = worker.poll();
+        }
+        if (t == null) {
+            t = steal(worker);
+        }
+        return t;
+    }
+
+    Task steal(TaskWorker thief) {
+        TaskWorker[] ws = workers;
+        int n = ws.length;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            TaskWorker victim = ws[(start + i) % n];
+            if (victim == thief) {
+                continue;
+            }
+            Task t = victim.steal();
+            if (t != null) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    void park(TaskWorker worker) {
+        idle.add(worker);
+        // Re-check after advertising as idle; a task pushed before we were
+        // visible in `idle` would otherwise go unnoticed until the next push.
+        if (fair != null && fair.hasWork()) {
+            idle.remove(worker);
+            return;
+        }
+        for (TaskWorker w : workers) {
+            if (w.hasWork()) {
+                idle.remove(worker);
+                return;
             }
         }
+        LockSupport.park(this);
+        idle.remove(worker);
     }
 }
@@ -0,0 +1,107 @@
+package cs455.scaling.task;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.locks.LockSupport;
+
+public class TaskWorker extends Thread {
+
+    private final TaskPool pool;
+    private final int index;
+    private final ConcurrentLinkedDeque<Task> deque;
+    private volatile int status;
+    private volatile boolean retiring;
+    private volatile boolean retired;
+    private volatile long busyNanos;
+
+    public TaskWorker(TaskPool pool, int index) {
+        super("Worker-" + index);
+        this.pool = pool;
+        this.index = index;
+        this.deque = new ConcurrentLinkedDeque<>();
+        this.status = 0;
+        setDaemon(true);
+    }
+
+    TaskPool getPool() {
+        return pool;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    // 0 when idle, 1 while running a task
+    public int getStatus() {
+        return status;
+    }
+
+    void push(Task t) {
+        deque.addLast(t);
+    }
+
+    // Owner takes oldest first. This doesn't keep a connection's replies in
+    // order, since its other tasks may be stolen and finish first; neither
+    // protocol needs that (version 1 clients match replies by digest,
+    // version 2 by id), only that each reply goes out whole, which the
+    // connection's write queue guarantees.
+    Task poll() {
+        return deque.pollFirst();
+    }
+
+    // Thieves take from the tail to stay clear of the owner
+    Task steal() {
+        return deque.pollLast();
+    }
+
+    boolean hasWork() {
+        return !deque.isEmpty();
+    }
+
+    boolean isRetiring() {
+        return retiring;
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    long getBusyNanos() {
+        return busyNanos;
+    }
+
+    // Asks the worker to exit once its current task is done
+    void retire() {
+        retiring = true;
+        wake();
+    }
+
+    @Override
+    public void run() {
+        while (!retiring) {
+            Task t = pool.next(this);
+            if (t == null) {
+                pool.park(this);
+                continue;
+            }
+
+            pool.taken(t);
+            status = 1;
+            long start = System.nanoTime();
+            try {
+                t.run();
+            } catch (Throwable e) {
+                System.out.println("[" + getName() + "] Task failed: " + e.getMessage());
+            }
+            busyNanos += System.nanoTime() - start;
+            status = 0;
+        }
+        // No longer in the pool's array, so nothing new lands here except
+        // by a push racing with this flag; whoever sees it moves the task.
+        retired = true;
+        pool.reclaim(this);
+    }
+
+    void wake() {
+        LockSupport.unpark(this);
+    }
+}
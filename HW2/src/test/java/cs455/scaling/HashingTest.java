@@ -0,0 +1,78 @@
+package cs455.scaling;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class HashingTest {
+
+    // SHA-1 of "abc" and of the empty string
+    private static final String ABC = "a9993e364706816aba3e25717850c26c9cd0d89d";
+    private static final String EMPTY = "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+
+    @Test
+    public void sha1MatchesKnownDigests() {
+        assertEquals(ABC, Hashing.toHex(Hashing.sha1("abc".getBytes(StandardCharsets.US_ASCII))));
+        assertEquals(EMPTY, Hashing.toHex(Hashing.sha1(new byte[0])));
+    }
+
+    @Test
+    public void hexKeepsLeadingZeros() {
+        byte[] digest = new byte[Hashing.DIGEST_LENGTH];
+        digest[1] = 0x0f;
+        digest[19] = 0x01;
+        String expected = "000f000000000000000000000000000000000001";
+
+        assertEquals(expected, Hashing.toHex(digest));
+
+        ByteBuffer out = ByteBuffer.allocate(Hashing.HEX_LENGTH);
+        Hashing.hex(digest, out);
+        assertEquals(Hashing.HEX_LENGTH, out.position());
+        assertEquals(expected, new String(out.array(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void hexInPlaceExpandsWithoutOverwriting() {
+        byte[] digest = Hashing.sha1("abc".getBytes(StandardCharsets.US_ASCII)).clone();
+        ByteBuffer buf = ByteBuffer.allocate(8 + Hashing.HEX_LENGTH);
+        buf.putLong(7);
+        buf.put(digest);
+
+        Hashing.hex(buf, 8, Hashing.DIGEST_LENGTH);
+
+        assertEquals(8 + Hashing.HEX_LENGTH, buf.position());
+        assertEquals(7, buf.getLong(0));
+        assertEquals(ABC, new String(buf.array(), 8, Hashing.HEX_LENGTH, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void hexInPlaceHandlesOtherLengths() {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        buf.put(new byte[] { 0x00, 0x0a, (byte) 0xf0, 0x01 });
+
+        Hashing.hex(buf, 0, 4);
+
+        assertEquals("000af001", new String(buf.array(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void fromHexReversesHex() {
+        byte[] digest = Hashing.sha1(new byte[0]).clone();
+        byte[] parsed = new byte[Hashing.DIGEST_LENGTH];
+
+        Hashing.fromHex(EMPTY.getBytes(StandardCharsets.US_ASCII), 0, parsed);
+
+        assertArrayEquals(digest, parsed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromHexRejectsNonHex() {
+        byte[] hex = EMPTY.getBytes(StandardCharsets.US_ASCII);
+        hex[5] = 'g';
+        Hashing.fromHex(hex, 0, new byte[Hashing.DIGEST_LENGTH]);
+    }
+}
@@ -0,0 +1,124 @@
+package cs455.scaling.audit;
+
+import cs455.scaling.Hashing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records written by AuditLog and read back by AuditReader.
+ */
+public class AuditLogTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("audit");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+
+    private static ByteBuffer result(int seed, int length) {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            b.put(i, (byte) (seed + i));
+        }
+        return b;
+    }
+
+    @Test
+    public void roundTripsAcrossSegments() throws IOException {
+        int recordLength = AuditLog.recordLength(Hashing.DIGEST_LENGTH);
+        AuditLog log = new AuditLog(directory, Hashing.DIGEST_LENGTH,
+                AuditLog.HEADER_LENGTH + 4 * recordLength, 64);
+        log.start();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(log.append(i, result(i, Hashing.DIGEST_LENGTH), 0, Hashing.DIGEST_LENGTH));
+        }
+        log.close();
+
+        assertEquals(10, log.getWritten());
+        assertTrue(Files.exists(AuditLog.segmentPath(directory, 2)));
+        AuditReader reader = new AuditReader(directory, false);
+        assertEquals(0, reader.verify());
+        assertEquals(10, reader.getRecords());
+    }
+
+    @Test
+    public void roundTripsShortResults() throws IOException {
+        AuditLog log = new AuditLog(directory, 4);
+        log.start();
+        for (int i = 0; i < 5; i++) {
+            log.append(i, result(i, 4), 0, 4);
+        }
+        log.close();
+
+        AuditReader reader = new AuditReader(directory, false);
+        assertEquals(0, reader.verify());
+        assertEquals(5, reader.getRecords());
+    }
+
+    @Test
+    public void fullRingDropsAreRecorded() throws IOException {
+        AuditLog log = new AuditLog(directory, Hashing.DIGEST_LENGTH, AuditLog.DEFAULT_SEGMENT_BYTES, 4);
+        // Not started yet, so only the first four fit
+        for (int i = 0; i < 10; i++) {
+            log.append(i, result(i, Hashing.DIGEST_LENGTH), 0, Hashing.DIGEST_LENGTH);
+        }
+        assertFalse(log.append(10, result(10, Hashing.DIGEST_LENGTH), 0, Hashing.DIGEST_LENGTH));
+        log.start();
+        log.close();
+
+        assertEquals(7, log.getDropped());
+        AuditReader reader = new AuditReader(directory, false);
+        // The drop marker is the one problem
+        assertEquals(1, reader.verify());
+        assertEquals(4, reader.getRecords());
+        assertEquals(7, reader.getDropped());
+    }
+
+    @Test
+    public void corruptRecordIsOneProblem() throws IOException {
+        AuditLog log = new AuditLog(directory, Hashing.DIGEST_LENGTH);
+        log.start();
+        for (int i = 0; i < 5; i++) {
+            log.append(i, result(i, Hashing.DIGEST_LENGTH), 0, Hashing.DIGEST_LENGTH);
+        }
+        log.close();
+
+        int recordLength = AuditLog.recordLength(Hashing.DIGEST_LENGTH);
+        try (RandomAccessFile f = new RandomAccessFile(AuditLog.segmentPath(directory, 0).toFile(), "rw")) {
+            long at = AuditLog.HEADER_LENGTH + 2L * recordLength + AuditLog.RESULT_OFFSET;
+            f.seek(at);
+            int b = f.read();
+            f.seek(at);
+            f.write(b ^ 0xff);
+        }
+
+        // The bad checksum, and no sequence error for the record after it
+        AuditReader reader = new AuditReader(directory, false);
+        assertEquals(1, reader.verify());
+        assertEquals(4, reader.getRecords());
+    }
+}
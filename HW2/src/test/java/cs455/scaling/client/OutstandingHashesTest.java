@@ -0,0 +1,101 @@
+package cs455.scaling.client;
+
+import cs455.scaling.Hashing;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutstandingHashesTest {
+
+    private static byte[] digest(int seed) {
+        return Hashing.sha1(new byte[] { (byte) seed }).clone();
+    }
+
+    @Test
+    public void matchesEachDigestOnce() {
+        OutstandingHashes hashes = new OutstandingHashes();
+        hashes.add(digest(1), 100);
+        hashes.add(digest(2), 200);
+
+        assertEquals(200, hashes.remove(digest(2)));
+        assertEquals(100, hashes.remove(digest(1)));
+        assertEquals(-1, hashes.remove(digest(1)));
+        assertEquals(1, hashes.getUnmatched());
+        assertEquals(0, hashes.size());
+    }
+
+    @Test
+    public void copiesTheCallersArray() {
+        OutstandingHashes hashes = new OutstandingHashes();
+        byte[] reused = digest(1);
+        hashes.add(reused, 100);
+        reused[0]++;
+
+        assertEquals(100, hashes.remove(digest(1)));
+    }
+
+    @Test
+    public void keepsConnectionsApart() {
+        OutstandingHashes hashes = new OutstandingHashes();
+        hashes.add(1, digest(7), 100);
+        hashes.add(2, digest(7), 200);
+
+        assertEquals(-1, hashes.remove(3, digest(7)));
+        assertEquals(200, hashes.remove(2, digest(7)));
+        assertEquals(-1, hashes.remove(2, digest(7)));
+        assertEquals(100, hashes.remove(1, digest(7)));
+    }
+
+    @Test
+    public void duplicatesMatchOnceEachOldestFirst() {
+        OutstandingHashes hashes = new OutstandingHashes();
+        hashes.add(1, digest(7), 100);
+        hashes.add(1, digest(7), 200);
+        assertEquals(2, hashes.size());
+
+        assertEquals(100, hashes.remove(1, digest(7)));
+        assertEquals(200, hashes.remove(1, digest(7)));
+        assertEquals(-1, hashes.remove(1, digest(7)));
+        assertEquals(1, hashes.getUnmatched());
+        assertEquals(0, hashes.size());
+    }
+
+    @Test
+    public void evictsOldestDuplicate() {
+        OutstandingHashes hashes = new OutstandingHashes(2);
+        hashes.add(digest(7), 100);
+        hashes.add(digest(7), 200);
+        hashes.add(digest(8), 300);
+
+        assertEquals(1, hashes.getEvicted());
+        assertEquals(200, hashes.remove(digest(7)));
+        assertEquals(300, hashes.remove(digest(8)));
+    }
+
+    @Test
+    public void evictsOldestBeyondBound() {
+        OutstandingHashes hashes = new OutstandingHashes(2);
+        hashes.add(digest(1), 100);
+        hashes.add(digest(2), 200);
+        hashes.add(digest(3), 300);
+
+        assertEquals(2, hashes.size());
+        assertEquals(1, hashes.getEvicted());
+        assertEquals(-1, hashes.remove(digest(1)));
+        assertEquals(200, hashes.remove(digest(2)));
+        assertEquals(300, hashes.remove(digest(3)));
+    }
+
+    @Test
+    public void answeredEntriesAreNotEvicted() {
+        OutstandingHashes hashes = new OutstandingHashes(2);
+        hashes.add(digest(1), 100);
+        hashes.add(digest(2), 200);
+        assertEquals(100, hashes.remove(digest(1)));
+        hashes.add(digest(3), 300);
+
+        assertEquals(0, hashes.getEvicted());
+        assertEquals(200, hashes.remove(digest(2)));
+        assertEquals(300, hashes.remove(digest(3)));
+    }
+}
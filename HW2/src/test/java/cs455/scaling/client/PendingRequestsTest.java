@@ -0,0 +1,97 @@
+package cs455.scaling.client;
+
+import cs455.scaling.Hashing;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PendingRequestsTest {
+
+    private static byte[] digest(int seed) {
+        return Hashing.sha1(new byte[] { (byte) seed }).clone();
+    }
+
+    @Test
+    public void windowRoundsUpToPowerOfTwo() {
+        assertEquals(8, new PendingRequests(5).getWindow());
+        assertEquals(8, new PendingRequests(8).getWindow());
+    }
+
+    @Test
+    public void matchesOutOfOrderReplies() {
+        PendingRequests pending = new PendingRequests(4);
+        pending.add(1, digest(1), 100);
+        pending.add(2, digest(2), 200);
+        pending.add(3, digest(3), 300);
+
+        assertEquals(300, pending.remove(3, digest(3), 0));
+        assertEquals(100, pending.remove(1, digest(1), 0));
+        assertEquals(200, pending.remove(2, digest(2), 0));
+        assertEquals(-1, pending.remove(2, digest(2), 0));
+        assertEquals(1, pending.getUnmatched());
+    }
+
+    @Test
+    public void readsDigestAtOffset() {
+        PendingRequests pending = new PendingRequests(4);
+        pending.add(9, digest(9), 100);
+        byte[] reply = new byte[8 + Hashing.DIGEST_LENGTH];
+        System.arraycopy(digest(9), 0, reply, 8, Hashing.DIGEST_LENGTH);
+
+        assertEquals(100, pending.remove(9, reply, 8));
+    }
+
+    @Test
+    public void wrongDigestIsMismatched() {
+        PendingRequests pending = new PendingRequests(4);
+        pending.add(1, digest(1), 100);
+
+        assertEquals(-1, pending.remove(1, digest(2), 0));
+        assertEquals(1, pending.getMismatched());
+        // The slot is freed either way
+        assertEquals(-1, pending.remove(1, digest(1), 0));
+        assertEquals(1, pending.getUnmatched());
+    }
+
+    @Test
+    public void nullDigestMatchesOnIdAlone() {
+        PendingRequests pending = new PendingRequests(4);
+        pending.add(5, new byte[Hashing.DIGEST_LENGTH], 100);
+
+        assertEquals(100, pending.remove(5, null, 0));
+        assertEquals(0, pending.getMismatched());
+    }
+
+    @Test
+    public void awaitRoomBlocksUntilTheSlotIsAnswered() throws Exception {
+        PendingRequests pending = new PendingRequests(2);
+        pending.add(0, digest(0), 100);
+        pending.add(1, digest(1), 200);
+        assertEquals(2, pending.getInFlight());
+
+        Thread sender = new Thread(() -> pending.awaitRoom(2));
+        sender.start();
+        // Request 1 is answered, but 2 would overwrite 0
+        pending.remove(1, digest(1), 0);
+        sender.join(100);
+        assertTrue(sender.isAlive());
+
+        pending.remove(0, digest(0), 0);
+        sender.join(1000);
+        assertFalse(sender.isAlive());
+        assertEquals(0, pending.getInFlight());
+    }
+
+    @Test
+    public void reusedSlotCountsStale() {
+        PendingRequests pending = new PendingRequests(4);
+        pending.add(1, digest(1), 100);
+        pending.add(5, digest(5), 500);
+
+        assertEquals(1, pending.getStale());
+        assertEquals(-1, pending.remove(1, digest(1), 0));
+        assertEquals(500, pending.remove(5, digest(5), 0));
+    }
+}
@@ -0,0 +1,180 @@
+package cs455.scaling.server;
+
+import cs455.scaling.BufferPool;
+import cs455.scaling.Hashing;
+import cs455.scaling.Protocol;
+import cs455.scaling.metrics.ConnectionStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Message reassembly in Connection.readMessage over a loopback socket:
+ * messages split across writes come out whole, and several in one write
+ * come out one at a time.
+ */
+public class ConnectionTest {
+
+    private ServerSocketChannel listener;
+    private SocketChannel client;
+    private SocketChannel channel;
+    private Selector selector;
+    private SelectionKey key;
+    private BufferPool pool;
+    private Connection conn;
+
+    @Before
+    public void setUp() throws IOException {
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(listener.getLocalAddress());
+        channel = listener.accept();
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        key = channel.register(selector, SelectionKey.OP_READ);
+        pool = new BufferPool(Protocol.MESSAGE_SIZE, 4);
+        conn = new Connection(new Reactor(null, null, pool, 0), pool, new ConnectionStats());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        channel.close();
+        listener.close();
+        selector.close();
+    }
+
+    @Test
+    public void version1MessageSplitAcrossWrites() throws Exception {
+        byte[] message = message(1, Protocol.MESSAGE_SIZE);
+        send(message, 0, 3);
+        assertNull(read());
+        send(message, 3, 5000);
+        assertNull(read());
+        send(message, 5003, message.length - 5003);
+
+        assertMessage(message, next());
+        assertEquals(Protocol.VERSION_1, conn.getProtocol());
+    }
+
+    @Test
+    public void version1MessagesCoalescedInOneWrite() throws Exception {
+        byte[] first = message(1, Protocol.MESSAGE_SIZE);
+        byte[] second = message(2, Protocol.MESSAGE_SIZE);
+        ByteBuffer both = ByteBuffer.allocate(2 * Protocol.MESSAGE_SIZE);
+        both.put(first).put(second).flip();
+        send(both);
+
+        assertMessage(first, next());
+        assertMessage(second, next());
+    }
+
+    @Test
+    public void version2FramesSplitAndCoalesced() throws Exception {
+        byte[] first = message(3, 100);
+        byte[] second = message(4, 5000);
+        ByteBuffer stream = ByteBuffer.allocate(Protocol.HELLO_LENGTH + 2 * Protocol.FRAME_HEADER_LENGTH
+                + first.length + second.length);
+        stream.putInt(Protocol.MAGIC).putInt(Protocol.VERSION_2);
+        stream.putInt(first.length).putLong(41).put(first);
+        stream.putInt(second.length).putLong(42).put(second);
+        byte[] bytes = stream.array();
+
+        // The hello and first frame together, then the second frame's
+        // header split in two
+        int split = Protocol.HELLO_LENGTH + Protocol.FRAME_HEADER_LENGTH + first.length + 5;
+        send(bytes, 0, split);
+        assertMessage(first, next());
+        assertEquals(41, conn.getRequestId());
+        assertEquals(Protocol.VERSION_2, conn.getProtocol());
+
+        send(bytes, split, bytes.length - split);
+        assertMessage(second, next());
+        assertEquals(42, conn.getRequestId());
+
+        // The hello was answered with itself and the result length
+        conn.flush(channel);
+        ByteBuffer hello = ByteBuffer.allocate(Protocol.HELLO_REPLY_LENGTH);
+        while (hello.hasRemaining()) {
+            client.read(hello);
+        }
+        assertEquals(Protocol.MAGIC, hello.getInt(0));
+        assertEquals(Protocol.VERSION_2, hello.getInt(4));
+        assertEquals(Hashing.DIGEST_LENGTH, hello.getInt(8));
+    }
+
+    @Test(expected = IOException.class)
+    public void version2RejectsOversizedFrame() throws Exception {
+        ByteBuffer stream = ByteBuffer.allocate(Protocol.HELLO_LENGTH + Protocol.FRAME_HEADER_LENGTH);
+        stream.putInt(Protocol.MAGIC).putInt(Protocol.VERSION_2);
+        stream.putInt(Protocol.MESSAGE_SIZE + 1).putLong(1);
+        stream.flip();
+        send(stream);
+        next();
+    }
+
+    private static byte[] message(int seed, int length) {
+        byte[] message = new byte[length];
+        for (int i = 0; i < length; i++) {
+            message[i] = (byte) (seed * 31 + i);
+        }
+        return message;
+    }
+
+    private void send(byte[] data, int offset, int length) throws IOException {
+        send(ByteBuffer.wrap(data, offset, length));
+    }
+
+    private void send(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            client.write(data);
+        }
+    }
+
+    /**
+     * One readMessage call, as the reactor makes on OP_READ, after giving
+     * the connection a buffer if it has none. Waits a moment first so bytes
+     * just written have reached the socket.
+     */
+    private ByteBuffer read() throws Exception {
+        Thread.sleep(20);
+        if (conn.getInbound() == null) {
+            conn.setInbound(pool.lease());
+        }
+        return conn.readMessage(key, channel);
+    }
+
+    private ByteBuffer next() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            ByteBuffer message = read();
+            if (message != null) {
+                return message;
+            }
+        }
+        fail("No complete message");
+        return null;
+    }
+
+    private void assertMessage(byte[] expected, ByteBuffer message) {
+        assertNotNull(message);
+        assertEquals(expected.length, message.position());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("byte " + i, expected[i], message.get(i));
+        }
+        pool.release(message);
+    }
+}
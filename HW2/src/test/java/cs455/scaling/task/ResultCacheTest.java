@@ -0,0 +1,98 @@
+package cs455.scaling.task;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResultCacheTest {
+
+    private static final int PAYLOAD = 8192;
+    private static final int RESULT = 20;
+    private static final long ENTRY = PAYLOAD + RESULT + ResultCache.ENTRY_OVERHEAD;
+
+    private static ByteBuffer payload(int seed) {
+        ByteBuffer b = ByteBuffer.allocate(PAYLOAD);
+        for (int i = 0; i < PAYLOAD; i++) {
+            b.put(i, (byte) (seed * 131 + i));
+        }
+        return b;
+    }
+
+    private static ByteBuffer result(int seed) {
+        ByteBuffer b = ByteBuffer.allocate(RESULT);
+        for (int i = 0; i < RESULT; i++) {
+            b.put(i, (byte) (seed + i));
+        }
+        return b;
+    }
+
+    @Test
+    public void returnsCachedResultWithoutMovingBuffers() {
+        ResultCache cache = new ResultCache(10 * ENTRY);
+        ByteBuffer payload = payload(1);
+        ByteBuffer result = result(1);
+        cache.put(payload, result);
+
+        assertEquals(0, payload.position());
+        assertEquals(0, result.position());
+        assertArrayEquals(result.array(), cache.get(payload));
+        assertEquals(0, payload.position());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void sameFingerprintDifferentBytesIsAMiss() {
+        ResultCache cache = new ResultCache(10 * ENTRY);
+        ByteBuffer original = payload(1);
+        cache.put(original, result(1));
+
+        // Byte 100 is not one the fingerprint samples
+        ByteBuffer changed = payload(1);
+        changed.put(100, (byte) (changed.get(100) + 1));
+        assertEquals(ResultCache.fingerprint(original), ResultCache.fingerprint(changed));
+
+        assertNull(cache.get(changed));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void storesCopies() {
+        ResultCache cache = new ResultCache(10 * ENTRY);
+        ByteBuffer payload = payload(1);
+        ByteBuffer result = result(1);
+        cache.put(payload, result);
+        payload.put(100, (byte) 0);
+        result.put(0, (byte) 0);
+
+        assertNull(cache.get(payload));
+        assertArrayEquals(result(1).array(), cache.get(payload(1)));
+    }
+
+    @Test
+    public void clockEvictsUnreferencedFirst() {
+        ResultCache cache = new ResultCache(2 * ENTRY);
+        cache.put(payload(1), result(1));
+        cache.put(payload(2), result(2));
+        assertNotNull(cache.get(payload(1)));
+
+        // 1 was referenced, so the hand passes over it and evicts 2
+        cache.put(payload(3), result(3));
+
+        assertNotNull(cache.get(payload(1)));
+        assertNull(cache.get(payload(2)));
+        assertNotNull(cache.get(payload(3)));
+    }
+
+    @Test
+    public void ignoresEntriesLargerThanBudget() {
+        ResultCache cache = new ResultCache(ENTRY - 1);
+        cache.put(payload(1), result(1));
+
+        assertNull(cache.get(payload(1)));
+    }
+}